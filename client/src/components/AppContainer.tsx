@@ -66,7 +66,7 @@ export default connect(
         sessions: state.sessions
     })),
     (dispatch): StateDerivedProps => ({
-        handleMessage: message => dispatch(actions.server.receive(message)),
+        handleMessage: message => dispatch<any>(actions.server.handleMessage(message)),
         onShowOverlay: payload => dispatch(actions.ui.overlay.show(payload))
     })
 )(AppContainer);
\ No newline at end of file
@@ -133,7 +133,7 @@ export default withRouter(connect(
         };
     }),
     (dispatch): StateDerivedProps => ({
-        handleMessage: message => dispatch(actions.server.receive(message)),
+        handleMessage: message => dispatch<any>(actions.server.handleMessage(message)),
         onSetFeatureDiagramLayout: payload => dispatch(actions.ui.featureDiagram.setLayout(payload)),
         onSetSelectMultipleFeatures: payload => dispatch(actions.ui.featureDiagram.feature.setSelectMultiple(payload)),
         onSelectAllFeatures: () => dispatch(actions.ui.featureDiagram.feature.selectAll()),
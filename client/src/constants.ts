@@ -27,7 +27,10 @@ const constants = {
     },
     server: {
         // WebSocket URI to connect to
-        webSocket: (userID = 'initialize') => `ws://${process.env.REACT_APP_SERVER || window.location.host}/socket/${userID}`
+        webSocket: (userID = 'initialize') => `ws://${process.env.REACT_APP_SERVER || window.location.host}/socket/${userID}`,
+        // whether to request the compact binary encoding of messages instead of JSON
+        binaryEncoding: true,
+        binarySubprotocol: 'varied-binary'
     },
     helpers: {
         withDimensions: {
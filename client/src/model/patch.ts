@@ -0,0 +1,53 @@
+/**
+ * Patches describe the changes between two versions of a feature model, so that the server
+ * does not need to send the whole feature model after every operation.
+ */
+
+import {Constraint, FeatureModel, FeatureTree} from './types';
+
+type PatchedFeatureTree = Omit<FeatureTree, 'children'> & {childrenIds: string[]};
+
+export interface FeatureModelPatch {
+    addedFeatures: PatchedFeatureTree[],
+    changedFeatures: PatchedFeatureTree[],
+    removedFeatureIDs: string[],
+    addedConstraints: Constraint[],
+    changedConstraints: Constraint[],
+    removedConstraintIDs: string[]
+};
+
+function flattenFeatureTree(featureTree: FeatureTree, features: Map<string, PatchedFeatureTree>): void {
+    const {children, ...feature} = featureTree;
+    features.set(feature.id, {...feature, childrenIds: children.map(child => child.id)});
+    children.forEach(child => flattenFeatureTree(child, features));
+}
+
+function buildFeatureTree(id: string, features: Map<string, PatchedFeatureTree>): FeatureTree {
+    const feature = features.get(id);
+    if (!feature)
+        throw new Error(`feature ${id} missing in patched feature model`);
+    const {childrenIds, ...featureTree} = feature;
+    return {...featureTree, children: childrenIds.map(childId => buildFeatureTree(childId, features))};
+}
+
+/**
+ * Applies a patch to a feature model, returning a new feature model.
+ * @param featureModel the feature model to patch, which is not modified
+ * @param patch the changes to apply
+ */
+export function applyPatch(featureModel: FeatureModel, patch: FeatureModelPatch): FeatureModel {
+    const features = new Map<string, PatchedFeatureTree>();
+    flattenFeatureTree(featureModel.featureTree, features);
+    patch.removedFeatureIDs.forEach(id => features.delete(id));
+    patch.addedFeatures.concat(patch.changedFeatures).forEach(feature => features.set(feature.id, feature));
+    const root = Array.from(features.values()).find(feature => feature.isRoot);
+    if (!root)
+        throw new Error('no root feature in patched feature model');
+
+    const constraints = featureModel.constraints
+        .filter(constraint => !patch.removedConstraintIDs.includes(constraint.id))
+        .map(constraint => patch.changedConstraints.find(changed => changed.id === constraint.id) || constraint)
+        .concat(patch.addedConstraints);
+
+    return {featureTree: buildFeatureTree(root.id, features), constraints};
+}
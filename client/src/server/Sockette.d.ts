@@ -9,6 +9,7 @@ export default class Sockette {
 
 export interface SocketteOptions {
     protocols?: string | string[];
+    binaryType?: BinaryType;
     timeout?: number;
     maxAttempts?: number;
     onopen?: (this: Sockette, ev: Event) => any;
@@ -12,6 +12,7 @@ export default function (url, opts) {
 
 	$.open = function (url) {
 		ws = new WebSocket(url, opts.protocols || []);
+		ws.binaryType = opts.binaryType || 'blob';
 
 		ws.onmessage = opts.onmessage || noop;
 
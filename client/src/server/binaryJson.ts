@@ -0,0 +1,200 @@
+/**
+ * Compact binary encoding of JSON, used for messages when the server supports it (see BinaryJson on the server).
+ * Every value starts with a tag byte. Strings are written only once per message and referred to by index afterwards,
+ * so that property names and feature IDs are not repeated. Arrays and objects are terminated with an END tag.
+ */
+
+enum Tag {
+    NULL = 0,
+    FALSE = 1,
+    TRUE = 2,
+    INTEGER = 3, // zigzag-encoded variable-length integer
+    DOUBLE = 4, // 64-bit big-endian IEEE 754
+    STRING = 5, // variable-length byte count and UTF-8 bytes
+    STRING_REFERENCE = 6, // variable-length index into the message's string table
+    BEGIN_ARRAY = 7,
+    BEGIN_OBJECT = 8,
+    END = 9
+}
+
+const textEncoder = new TextEncoder(), textDecoder = new TextDecoder();
+
+class Writer {
+    bytes = new Uint8Array(1024);
+    size = 0;
+    stringTable = new Map<string, number>();
+
+    ensureCapacity(capacity: number) {
+        if (capacity > this.bytes.length) {
+            const bytes = new Uint8Array(Math.max(capacity, 2 * this.bytes.length));
+            bytes.set(this.bytes.subarray(0, this.size));
+            this.bytes = bytes;
+        }
+    }
+
+    writeByte(value: number) {
+        this.ensureCapacity(this.size + 1);
+        this.bytes[this.size++] = value;
+    }
+
+    // uses arithmetic instead of bitwise operators, which only work on 32 bits
+    writeVarInt(value: number) {
+        while (value >= 0x80) {
+            this.writeByte(value % 0x80 + 0x80);
+            value = Math.floor(value / 0x80);
+        }
+        this.writeByte(value);
+    }
+
+    writeString(value: string) {
+        const index = this.stringTable.get(value);
+        if (typeof index !== 'undefined') {
+            this.writeByte(Tag.STRING_REFERENCE);
+            this.writeVarInt(index);
+        } else {
+            this.stringTable.set(value, this.stringTable.size);
+            const encoded = textEncoder.encode(value);
+            this.writeByte(Tag.STRING);
+            this.writeVarInt(encoded.length);
+            this.ensureCapacity(this.size + encoded.length);
+            this.bytes.set(encoded, this.size);
+            this.size += encoded.length;
+        }
+    }
+
+    writeNumber(value: number) {
+        if (Number.isSafeInteger(value)) {
+            this.writeByte(Tag.INTEGER);
+            this.writeVarInt(value >= 0 ? 2 * value : -2 * value - 1);
+        } else {
+            this.writeByte(Tag.DOUBLE);
+            this.ensureCapacity(this.size + 8);
+            new DataView(this.bytes.buffer).setFloat64(this.size, value);
+            this.size += 8;
+        }
+    }
+
+    write(value: any) {
+        if (value === null || typeof value === 'undefined')
+            this.writeByte(Tag.NULL);
+        else if (typeof value === 'boolean')
+            this.writeByte(value ? Tag.TRUE : Tag.FALSE);
+        else if (typeof value === 'number')
+            this.writeNumber(value);
+        else if (typeof value === 'string')
+            this.writeString(value);
+        else if (Array.isArray(value)) {
+            this.writeByte(Tag.BEGIN_ARRAY);
+            value.forEach(element => this.write(element));
+            this.writeByte(Tag.END);
+        } else {
+            this.writeByte(Tag.BEGIN_OBJECT);
+            // like JSON.stringify, omit undefined members
+            Object.keys(value)
+                .filter(key => typeof value[key] !== 'undefined' && typeof value[key] !== 'function')
+                .forEach(key => {
+                    this.writeString(key);
+                    this.write(value[key]);
+                });
+            this.writeByte(Tag.END);
+        }
+    }
+}
+
+class Reader {
+    bytes: Uint8Array;
+    dataView: DataView;
+    offset = 0;
+    stringTable: string[] = [];
+
+    constructor(buffer: ArrayBuffer) {
+        this.bytes = new Uint8Array(buffer);
+        this.dataView = new DataView(buffer);
+    }
+
+    readByte(): number {
+        if (this.offset >= this.bytes.length)
+            throw new Error('unexpected end of binary message');
+        return this.bytes[this.offset++];
+    }
+
+    readVarInt(): number {
+        let value = 0, factor = 1, b;
+        do {
+            b = this.readByte();
+            value += (b & 0x7F) * factor;
+            factor *= 0x80;
+        } while (b & 0x80);
+        return value;
+    }
+
+    readString(tag: number): string {
+        if (tag === Tag.STRING) {
+            const length = this.readVarInt();
+            const value = textDecoder.decode(this.bytes.subarray(this.offset, this.offset + length));
+            this.offset += length;
+            this.stringTable.push(value);
+            return value;
+        }
+        if (tag === Tag.STRING_REFERENCE) {
+            const index = this.readVarInt();
+            if (index >= this.stringTable.length)
+                throw new Error(`invalid string reference ${index} in binary message`);
+            return this.stringTable[index];
+        }
+        throw new Error(`expected string in binary message, got tag ${tag}`);
+    }
+
+    read(tag: number): any {
+        switch (tag) {
+            case Tag.NULL:
+                return null;
+            case Tag.FALSE:
+                return false;
+            case Tag.TRUE:
+                return true;
+            case Tag.INTEGER: {
+                const value = this.readVarInt();
+                return value % 2 === 0 ? value / 2 : -(value + 1) / 2;
+            }
+            case Tag.DOUBLE: {
+                const value = this.dataView.getFloat64(this.offset);
+                this.offset += 8;
+                return value;
+            }
+            case Tag.STRING:
+            case Tag.STRING_REFERENCE:
+                return this.readString(tag);
+            case Tag.BEGIN_ARRAY: {
+                const array: any[] = [];
+                for (let elementTag; (elementTag = this.readByte()) !== Tag.END;)
+                    array.push(this.read(elementTag));
+                return array;
+            }
+            case Tag.BEGIN_OBJECT: {
+                const object: {[key: string]: any} = {};
+                for (let nameTag; (nameTag = this.readByte()) !== Tag.END;) {
+                    const name = this.readString(nameTag);
+                    object[name] = this.read(this.readByte());
+                }
+                return object;
+            }
+            default:
+                throw new Error(`invalid tag ${tag} in binary message`);
+        }
+    }
+}
+
+export function encodeBinaryJson(value: any): Uint8Array {
+    const writer = new Writer();
+    writer.write(value);
+    return writer.bytes.subarray(0, writer.size);
+}
+
+export function decodeBinaryJson(buffer: ArrayBuffer): any {
+    const reader = new Reader(buffer);
+    const value = reader.read(reader.readByte());
+    if (reader.offset !== reader.bytes.length)
+        throw new Error('unexpected data after binary message');
+    return value;
+}
@@ -6,11 +6,13 @@ import constants from '../constants';
 import {Message} from '../types';
 import logger from '../helpers/logger';
 import Sockette from './Sockette';
+import {decodeBinaryJson, encodeBinaryJson} from './binaryJson';
 import {v4 as uuidv4} from 'uuid';
 
 type HandleMessageFunction = (data: Message) => void;
 
 let handleMessage: HandleMessageFunction;
+let isBinary = false;
 const tag = 'socket';
 
 const getWebSocket = ((): () => Promise<Sockette> => {
@@ -22,8 +24,13 @@ const getWebSocket = ((): () => Promise<Sockette> => {
             logger.logTagged({tag}, () => `connecting to ${url}`);
 
             const sockette = new Sockette(url, {
-                onopen() {
-                    logger.logTagged({tag}, () => `open`);
+                protocols: constants.server.binaryEncoding ? [constants.server.binarySubprotocol] : [],
+                binaryType: 'arraybuffer',
+
+                onopen(e) {
+                    // the server may not support the binary encoding, then JSON is used
+                    isBinary = (e.target as WebSocket).protocol === constants.server.binarySubprotocol;
+                    logger.logTagged({tag}, () => `open (${isBinary ? 'binary' : 'JSON'} encoding)`);
                     resolve(sockette);
                 },
 
@@ -46,7 +53,9 @@ const getWebSocket = ((): () => Promise<Sockette> => {
                 },
 
                 onmessage(message) {
-                    const data: Message = JSON.parse(message.data);
+                    const data: Message = typeof message.data === 'string'
+                        ? JSON.parse(message.data)
+                        : decodeBinaryJson(message.data);
                     logger.logTagged({tag: 'receive'}, () => data);
                     if (handleMessage)
                         handleMessage(data);
@@ -68,5 +77,5 @@ export async function openWebSocket(_handleMessage?: HandleMessageFunction): Pro
 export async function sendMessage(message: Message): Promise<void> {
     const webSocket = await getWebSocket();
     logger.logTagged({tag: 'send'}, () => message);
-    webSocket.send(JSON.stringify(message));
+    webSocket.send(isBinary ? encodeBinaryJson(message) : JSON.stringify(message));
 }
\ No newline at end of file
@@ -4,7 +4,7 @@
  */
 
 import {deprecated, ActionType, action} from 'typesafe-actions';
-import {Message, MessageType, FeatureDiagramLayoutType, OverlayType, OverlayProps, ArtifactPath, ServerFormatType} from '../types';
+import {Message, MessageType, FeatureDiagramLayoutType, OverlayType, OverlayProps, ArtifactPath, ServerFormatType, AnalysisMessageType} from '../types';
 import {Dispatch, AnyAction, Action as ReduxAction} from 'redux';
 import {ThunkAction} from 'redux-thunk';
 import {State} from './types';
@@ -12,6 +12,7 @@ import {FeatureTree, Formula} from '../model/types';
 import {enqueueOutgoingMessage, flushOutgoingMessageQueue} from '../server/messageQueue';
 import deferred from '../helpers/deferred';
 import {getCurrentArtifactPath} from '../router';
+import {isResyncPending} from './selectors';
 
 const { createStandardAction } = deprecated;
 
@@ -30,6 +31,22 @@ function createMessageAction<P>(fn: (payload: P) => Message): (payload: P) => Th
     };
 }
 
+/**
+ * Handles a received message. When the reducer notices a missed patch, the whole artifact data is requested again,
+ * which is a side effect and thus done here instead of in the reducer.
+ */
+function handleMessage(message: Message): ThunkAction<ReduxAction, State, any, any> {
+    return (dispatch: Dispatch<AnyAction>, getState: () => State) => {
+        const wasResyncPending = isResyncPending(getState(), message.artifactPath),
+            result = dispatch(actions.server.receive(message));
+        if (!wasResyncPending && isResyncPending(getState(), message.artifactPath)) {
+            enqueueOutgoingMessage({type: MessageType.ARTIFACT_DATA_REQUEST}, message.artifactPath);
+            deferred(flushOutgoingMessageQueue)();
+        }
+        return result;
+    };
+}
+
 function createOperationAction<P>(makePOSequence: (payload: P, kernel: object) => any): (payload: P) => ThunkAction<Promise<ReduxAction>, State, any, any> {
     return (payload: P) => {
         return async (dispatch: Dispatch<AnyAction>, getState: () => State) => {
@@ -68,12 +85,17 @@ const actions = {
     },
     server: {
         receive: createStandardAction('server/receiveMessage')<Message>(),
+        handleMessage,
         addArtifact: createMessageAction(({artifactPath, source}: {artifactPath: ArtifactPath, source?: string}) =>
             ({type: MessageType.ADD_ARTIFACT, artifactPath, source})),
         removeArtifact: createMessageAction(({artifactPath}: {artifactPath: ArtifactPath}) =>
             ({type: MessageType.REMOVE_ARTIFACT, artifactPath})),
         exportArtifact: createMessageAction(({artifactPath, format}: {artifactPath: ArtifactPath, format: ServerFormatType}) =>
             ({type: MessageType.EXPORT_ARTIFACT, artifactPath, format})),
+        cancelExportArtifact: createMessageAction(({artifactPath, format}: {artifactPath: ArtifactPath, format: ServerFormatType}) =>
+            ({type: MessageType.EXPORT_ARTIFACT_CANCEL, artifactPath, format})),
+        analyze: createMessageAction(({artifactPath, analysis, featureIDs}: {artifactPath: ArtifactPath, analysis: AnalysisMessageType, featureIDs?: string[]}) =>
+            ({type: analysis, artifactPath, featureIDs})),
         joinRequest: createMessageAction(({artifactPath}: {artifactPath: ArtifactPath}) => ({type: MessageType.JOIN_REQUEST, artifactPath})),
         leaveRequest: createMessageAction(({artifactPath}: {artifactPath: ArtifactPath}) => ({type: MessageType.LEAVE_REQUEST, artifactPath})),
         undo: createMessageAction(() => ({type: MessageType.ERROR})), // TODO
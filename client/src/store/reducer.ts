@@ -10,6 +10,7 @@ import {defaultSettings, getNewSettings} from './settings';
 import {OverlayType, isMessageType, MessageType, isFloatingFeatureOverlay, OverlayProps, isArtifactPathEqual, ArtifactPath, Message} from '../types';
 import {setAdd, setRemove, SetOperationFunction, arrayReplace} from '../helpers/array';
 import {getFeatureModel, isEditingFeatureModel, getSession, getCurrentFeatureModel, getCurrentSession, isFeatureDiagramSession} from './selectors';
+import {applyPatch} from '../model/patch';
 import actions, {Action, SERVER_SEND_MESSAGE, KERNEL_GENERATE_OPERATION} from './actions';
 import {getType, isActionOf} from 'typesafe-actions';
 import {State, initialState, Session, FeatureDiagramSession, initialFeatureDiagramSessionState} from './types';
@@ -191,12 +192,12 @@ function serverReceiveReducer(state: State, action: Action): State {
                     state = getNewState(state, 'sessions',
                     getNewSessions(state, action.payload.artifactPath!,
                         (session: Session) => {
-                            return {...session, kernelFeatureModel: action.payload.payload};
+                            return {...session, kernelFeatureModel: action.payload.payload, version: action.payload.version, isResyncPending: false};
                         }));
                 } catch (e) {
                     state = getNewState(state,
                         'sessions', [...state.sessions,
-                            initialFeatureDiagramSessionState(action.payload.artifactPath!, apiFeatureModel)]);
+                            initialFeatureDiagramSessionState(action.payload.artifactPath!, apiFeatureModel, action.payload.version)]);
     
                 }
                 if (isEditingFeatureModel(state)) {
@@ -210,7 +211,59 @@ function serverReceiveReducer(state: State, action: Action): State {
                 }
                 return state;
 
-                return state;
+            case MessageType.ARTIFACT_DATA_PATCH: {
+                let session: FeatureDiagramSession;
+                try {
+                    session = getSession(state, action.payload.artifactPath!) as FeatureDiagramSession;
+                } catch (e) {
+                    logger.warnTagged({tag: 'server'}, () => 'ignoring patch for a session that has not been joined');
+                    return state;
+                }
+                // patches are superseded by the requested artifact data
+                if (session.isResyncPending)
+                    return state;
+                if (action.payload.version !== session.version + 1) {
+                    // we missed a patch, so the server has to send the whole artifact data again
+                    // (which is requested by actions.server.handleMessage)
+                    logger.warnTagged({tag: 'server'}, () => `expected version ${session.version + 1}, got ${action.payload.version}`);
+                    return getNewState(state, 'sessions',
+                        getNewSessions(state, action.payload.artifactPath!,
+                            (session: Session) => ({...session, isResyncPending: true})));
+                }
+                state = getNewState(state, 'sessions',
+                    getNewSessions(state, action.payload.artifactPath!,
+                        (session: Session) => ({
+                            ...session,
+                            kernelFeatureModel: applyPatch((session as FeatureDiagramSession).kernelFeatureModel, action.payload.payload),
+                            version: action.payload.version
+                        })));
+                return updateFeatureModel(state, action.payload.artifactPath!);
+            }
+
+            case MessageType.ANALYSIS_VOID_MODEL:
+            case MessageType.ANALYSIS_DEAD_FEATURES:
+            case MessageType.ANALYSIS_CORE_FEATURES:
+            case MessageType.ANALYSIS_FALSE_OPTIONAL_FEATURES: {
+                let session: FeatureDiagramSession;
+                try {
+                    session = getSession(state, action.payload.artifactPath!) as FeatureDiagramSession;
+                } catch (e) {
+                    return state;
+                }
+                // results are sent right after the analyzed version, so a result for another version is outdated
+                if (action.payload.version !== session.version)
+                    return state;
+                const {version, featureIDs, isVoid, result} = action.payload;
+                return getNewState(state, 'sessions',
+                    getNewSessions(state, action.payload.artifactPath!,
+                        (session: Session) => ({
+                            ...session,
+                            analyses: {
+                                ...(session as FeatureDiagramSession).analyses,
+                                [action.payload.type]: {version, featureIDs, isVoid, result}
+                            }
+                        })));
+            }
 
             default:
                 logger.warn(() => `no message reducer defined for action type ${action.payload.type}`);
@@ -17,6 +17,16 @@ export function isFeatureDiagramSession(session?: Session): session is FeatureDi
         (<FeatureDiagramSession>session).kernelFeatureModel !== undefined;
 }
 
+/**
+ * @return whether patches for the artifact are ignored until the whole artifact data has been received again
+ */
+export function isResyncPending(state: State, artifactPath?: ArtifactPath): boolean {
+    if (!artifactPath)
+        return false;
+    const session = state.sessions.find(session => isArtifactPathEqual(session.artifactPath, artifactPath));
+    return isFeatureDiagramSession(session) && session.isResyncPending;
+}
+
 export function isEditingFeatureModel(state: State): boolean {
     const currentArtifactPath = getCurrentArtifactPath(state.sessions);
     if (!currentArtifactPath)
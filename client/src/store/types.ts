@@ -1,6 +1,6 @@
 import FeatureDiagram from '../model/FeatureDiagram';
 import {defaultSettings, Settings} from './settings';
-import {Message, FeatureDiagramLayoutType, OverlayType, OverlayProps, ArtifactPath} from '../types';
+import {Message, FeatureDiagramLayoutType, OverlayType, OverlayProps, ArtifactPath, AnalysisMessageType} from '../types';
 import {FeatureTree, Formula, FeatureModel} from '../model/types';
 
 export interface User {
@@ -13,8 +13,18 @@ export interface Session {
     users: User[]
 };
 
+export interface AnalysisResult {
+    version: number,
+    featureIDs?: string[], // the analyzed features, all features if not given
+    isVoid?: boolean,
+    result?: string[]
+};
+
 export interface FeatureDiagramSession extends Session {
     kernelFeatureModel: FeatureModel,
+    version: number,
+    isResyncPending: boolean,
+    analyses: {[analysis in AnalysisMessageType]?: AnalysisResult},
     layout: FeatureDiagramLayoutType,
     isSelectMultipleFeatures: boolean,
     selectedFeatureIDs: string[],
@@ -40,11 +50,14 @@ export const initialState: State = {
 };
 
 export const initialFeatureDiagramSessionState =
-    (artifactPath: ArtifactPath, kernelFeatureModel: FeatureModel):
+    (artifactPath: ArtifactPath, kernelFeatureModel: FeatureModel, version: number):
     FeatureDiagramSession => ({
         artifactPath,
         users: [],
         kernelFeatureModel,
+        version,
+        isResyncPending: false,
+        analyses: {},
         layout: FeatureDiagramLayoutType.verticalTree,
         isSelectMultipleFeatures: false,
         selectedFeatureIDs: [],
@@ -11,16 +11,27 @@ export enum MessageType {
     ADD_ARTIFACT = 'ADD_ARTIFACT',
     REMOVE_ARTIFACT = 'REMOVE_ARTIFACT',
     EXPORT_ARTIFACT = 'EXPORT_ARTIFACT',
+    EXPORT_ARTIFACT_CANCEL = 'EXPORT_ARTIFACT_CANCEL',
     USER_JOINED = 'USER_JOINED',
     USER_LEFT = 'USER_LEFT',
     SET_USER_PROFILE = 'SET_USER_PROFILE',
     JOIN_REQUEST = 'JOIN_REQUEST',
     LEAVE_REQUEST = 'LEAVE_REQUEST',
     ARTIFACT_DATA = 'ARTIFACT_DATA',
+    ARTIFACT_DATA_PATCH = 'ARTIFACT_DATA_PATCH',
+    ARTIFACT_DATA_REQUEST = 'ARTIFACT_DATA_REQUEST',
     OPERATION_FEATURE_CREATE_BELOW = 'OPERATION_FEATURE_CREATE_BELOW',
-    OPERATION_FEATURE_REMOVE = 'OPERATION_FEATURE_REMOVE'
+    OPERATION_FEATURE_REMOVE = 'OPERATION_FEATURE_REMOVE',
+    OPERATION_BATCH = 'OPERATION_BATCH',
+    ANALYSIS_VOID_MODEL = 'ANALYSIS_VOID_MODEL',
+    ANALYSIS_DEAD_FEATURES = 'ANALYSIS_DEAD_FEATURES',
+    ANALYSIS_CORE_FEATURES = 'ANALYSIS_CORE_FEATURES',
+    ANALYSIS_FALSE_OPTIONAL_FEATURES = 'ANALYSIS_FALSE_OPTIONAL_FEATURES'
 };
 
+export type AnalysisMessageType = MessageType.ANALYSIS_VOID_MODEL | MessageType.ANALYSIS_DEAD_FEATURES |
+    MessageType.ANALYSIS_CORE_FEATURES | MessageType.ANALYSIS_FALSE_OPTIONAL_FEATURES;
+
 export enum FeatureDiagramLayoutType {
     verticalTree = 'verticalTree',
     horizontalTree = 'horizontalTree'
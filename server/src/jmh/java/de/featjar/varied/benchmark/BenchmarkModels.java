@@ -0,0 +1,41 @@
+package de.featjar.varied.benchmark;
+
+import de.featjar.model.Feature;
+import de.featjar.model.FeatureModel;
+import de.featjar.varied.Main;
+import de.featjar.varied.project.ProjectManager;
+import de.featjar.varied.util.FeatureModels;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Feature models that benchmarks are parameterized over: the bundled examples (by name) and synthetic
+ * feature models with a given number of features (e.g., synthetic-1000).
+ */
+public class BenchmarkModels {
+    public static final String SYNTHETIC = "synthetic-";
+    private static final int CHILDREN_PER_FEATURE = 10;
+
+    public static FeatureModel load(String name) {
+        if (name.startsWith(SYNTHETIC))
+            return createSynthetic(Integer.parseInt(name.substring(SYNTHETIC.length())));
+        return FeatureModels.load(Main.getResourceURL("examples/" + name + ".xml").orElseThrow());
+    }
+
+    /**
+     * Creates a feature tree breadth-first, in which every feature has (up to) ten children.
+     */
+    private static FeatureModel createSynthetic(int numberOfFeatures) {
+        FeatureModel featureModel = load(ProjectManager.EMPTY);
+        Queue<Feature> parents = new ArrayDeque<>();
+        parents.add(featureModel.getFeatureTree().getFeature());
+        int count = featureModel.getFeatures().size();
+        while (count < numberOfFeatures) {
+            Feature parent = parents.remove();
+            for (int i = 0; i < CHILDREN_PER_FEATURE && count < numberOfFeatures; i++, count++)
+                parents.add(parent.mutate().createFeatureBelow());
+        }
+        return featureModel;
+    }
+}
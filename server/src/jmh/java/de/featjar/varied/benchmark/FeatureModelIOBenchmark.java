@@ -0,0 +1,47 @@
+package de.featjar.varied.benchmark;
+
+import de.featjar.model.FeatureModel;
+import de.featjar.varied.util.FeatureModels;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing and printing feature models with FeatJAR (e.g., when adding or exporting artifacts).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FeatureModelIOBenchmark {
+    @Param({"Car", "FameDB", "uvr2web", "CollaborativeModeling", "synthetic-1000", "synthetic-10000", "synthetic-100000"})
+    public String model;
+
+    private FeatureModel featureModel;
+    private String source;
+
+    @Setup
+    public void setUp() {
+        featureModel = BenchmarkModels.load(model);
+        source = FeatureModels.serialize(featureModel, "XmlFeatureModelFormat");
+    }
+
+    @Benchmark
+    public FeatureModel load() {
+        return FeatureModels.load(source, model + ".xml");
+    }
+
+    @Benchmark
+    public String serialize(Format format) {
+        return FeatureModels.serialize(featureModel, format.format);
+    }
+
+    // a separate state, so that only serialization is parameterized over formats
+    @State(Scope.Benchmark)
+    public static class Format {
+        @Param({"XmlFeatureModelFormat", "DIMACSFormat", "SXFMFormat"})
+        public String format;
+    }
+}
@@ -0,0 +1,93 @@
+package de.featjar.varied.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import de.featjar.model.FeatureModel;
+import de.featjar.varied.api.Api;
+import de.featjar.varied.api.Message;
+import de.featjar.varied.api.MessageSerializer;
+import de.featjar.varied.api.Payload;
+import de.featjar.varied.project.Artifact;
+import de.featjar.varied.util.FeatureModels;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding of messages and feature model payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SerializationBenchmark {
+    @Param({"Car", "FameDB", "uvr2web", "CollaborativeModeling", "synthetic-1000", "synthetic-10000", "synthetic-100000"})
+    public String model;
+
+    private final MessageSerializer.MessageEncoder encoder = new MessageSerializer.MessageEncoder();
+    private final MessageSerializer.MessageDecoder decoder = new MessageSerializer.MessageDecoder();
+    private FeatureModel featureModel;
+    private Api.ArtifactData artifactData;
+    private Payload.Index index;
+    private String addArtifactMessage;
+    private String removeMessage;
+
+    @Setup
+    public void setUp() {
+        featureModel = BenchmarkModels.load(model);
+        Artifact.Path artifactPath = new Artifact.Path("Benchmark", model);
+        artifactData = new Api.ArtifactData(artifactPath, 0, featureModel);
+        index = Payload.toIndex(featureModel);
+
+        JsonObject addArtifact = new JsonObject();
+        addArtifact.addProperty("type", Api.TypeEnum.ADD_ARTIFACT.toString());
+        addArtifact.addProperty("source", FeatureModels.serialize(featureModel, "XmlFeatureModelFormat"));
+        addArtifactMessage = addArtifact.toString();
+
+        JsonObject remove = new JsonObject();
+        remove.addProperty("type", Api.TypeEnum.OPERATION_FEATURE_REMOVE.toString());
+        JsonArray featureIDs = new JsonArray();
+        featureModel.getFeatures().stream().limit(100).forEach(feature -> featureIDs.add(feature.getIdentifier().toString()));
+        remove.add("featureIDs", featureIDs);
+        removeMessage = remove.toString();
+    }
+
+    @Benchmark
+    public String encodeArtifactData() {
+        return encoder.encode(artifactData);
+    }
+
+    @Benchmark
+    public String writeFeatureModel() throws IOException {
+        StringWriter writer = new StringWriter();
+        Payload.writeFeatureModel(new JsonWriter(writer), featureModel);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public Payload.Index toIndex() {
+        return Payload.toIndex(featureModel);
+    }
+
+    // a patch for a change of the root feature, which only visits the root and its children
+    @Benchmark
+    public JsonObject updateIndex() {
+        return Payload.updateIndex(index, featureModel, List.of(featureModel.getFeatureTree().getFeature()));
+    }
+
+    @Benchmark
+    public Message decodeAddArtifact() {
+        return decoder.decode(addArtifactMessage);
+    }
+
+    @Benchmark
+    public Message decodeRemoveOperation() {
+        return decoder.decode(removeMessage);
+    }
+}
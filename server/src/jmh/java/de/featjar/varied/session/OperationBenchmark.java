@@ -0,0 +1,99 @@
+package de.featjar.varied.session;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import de.featjar.model.FeatureTree;
+import de.featjar.varied.api.Api;
+import de.featjar.varied.api.Message;
+import de.featjar.varied.api.MessageSerializer;
+import de.featjar.varied.benchmark.BenchmarkModels;
+import de.featjar.varied.project.Artifact;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures applying operations to a feature model session, including computing the broadcast patch.
+ * This is in the session package to call {@link Session.FeatureModel#_onMessage} directly, bypassing the mailbox.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OperationBenchmark {
+    private static final int BATCH_SIZE = 10;
+
+    @Param({"Car", "FameDB", "uvr2web", "CollaborativeModeling", "synthetic-1000", "synthetic-10000", "synthetic-100000"})
+    public String model;
+
+    private final MessageSerializer.MessageDecoder decoder = new MessageSerializer.MessageDecoder();
+    private final User user = new User(UUID.randomUUID(), null);
+    private Session.FeatureModel session;
+    private Message.IDecodable createBelowMessage;
+    private Message.IDecodable batchMessage;
+
+    private Message.IDecodable decode(JsonObject message) {
+        return (Message.IDecodable) decoder.decode(message.toString());
+    }
+
+    private JsonObject createBelow(String featureParentID) {
+        JsonObject message = new JsonObject();
+        message.addProperty("type", Api.TypeEnum.OPERATION_FEATURE_CREATE_BELOW.toString());
+        message.addProperty("featureParentID", featureParentID);
+        return message;
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpSession() {
+        session = new Session.FeatureModel(new Artifact.Path("Benchmark", model), BenchmarkModels.load(model), null);
+        String rootID = session.getFeatureModel().getFeatureTree().getFeature().getIdentifier().toString();
+        createBelowMessage = decode(createBelow(rootID));
+
+        JsonObject batch = new JsonObject();
+        batch.addProperty("type", Api.TypeEnum.OPERATION_BATCH.toString());
+        JsonArray operations = new JsonArray();
+        for (int i = 0; i < BATCH_SIZE; i++)
+            operations.add(createBelow(rootID));
+        batch.add("operations", operations);
+        batchMessage = decode(batch);
+    }
+
+    @Benchmark
+    public boolean createBelow() {
+        return session._onMessage(user, createBelowMessage);
+    }
+
+    @Benchmark
+    public boolean remove(PendingRemove pendingRemove) {
+        return session._onMessage(user, pendingRemove.message);
+    }
+
+    @Benchmark
+    public boolean batchCreateBelow() {
+        return session._onMessage(user, batchMessage);
+    }
+
+    /**
+     * Creates a feature to be removed by the next invocation, so that the feature model does not shrink.
+     */
+    @State(Scope.Thread)
+    public static class PendingRemove {
+        private Message.IDecodable message;
+
+        @Setup(Level.Invocation)
+        public void setUp(OperationBenchmark benchmark) {
+            benchmark.session._onMessage(benchmark.user, benchmark.createBelowMessage);
+            List<? extends FeatureTree> children = benchmark.session.getFeatureModel().getFeatureTree().getChildren();
+            JsonObject remove = new JsonObject();
+            remove.addProperty("type", Api.TypeEnum.OPERATION_FEATURE_REMOVE.toString());
+            JsonArray featureIDs = new JsonArray();
+            featureIDs.add(children.get(children.size() - 1).getFeature().getIdentifier().toString());
+            remove.add("featureIDs", featureIDs);
+            message = benchmark.decode(remove);
+        }
+    }
+}
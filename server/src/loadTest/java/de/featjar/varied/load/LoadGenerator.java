@@ -0,0 +1,213 @@
+package de.featjar.varied.load;
+
+import de.featjar.varied.Main;
+import de.featjar.varied.project.Artifact;
+import de.featjar.varied.project.Project;
+import de.featjar.varied.project.ProjectManager;
+import org.eclipse.jetty.util.component.LifeCycle;
+
+import javax.websocket.ContainerProvider;
+import javax.websocket.WebSocketContainer;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Generates load on a server running in the same process, with simulated users connecting over WebSockets on
+ * localhost. Every user joins one artifact, creates a feature of its own, and then alternately creates and removes
+ * a feature below it or exports the artifact at a fixed rate. Latencies are measured from when an operation was due
+ * to be sent until its effect is received, so an overloaded server is not hidden by users falling behind schedule.
+ * <p>
+ * Usage: {@code LoadGenerator [--artifacts M] [--users N] [--rate R] [--exports P] [--warmup S] [--duration S]
+ * [--model NAME] [--port PORT]}, where N users join each of M artifacts (copies of the bundled example NAME), each
+ * user sends R operations per second, and a fraction P of those are exports.
+ */
+public class LoadGenerator {
+    private final int artifacts, users, port;
+    private final double rate, exports;
+    private final long warmup, duration;
+    private final String model;
+
+    private final Statistics operationStatistics = new Statistics();
+    private final Statistics exportStatistics = new Statistics();
+
+    private LoadGenerator(Map<String, String> options) {
+        artifacts = Integer.parseInt(options.getOrDefault("artifacts", "4"));
+        users = Integer.parseInt(options.getOrDefault("users", "8"));
+        rate = Double.parseDouble(options.getOrDefault("rate", "5"));
+        exports = Double.parseDouble(options.getOrDefault("exports", "0.05"));
+        warmup = Long.parseLong(options.getOrDefault("warmup", "5"));
+        duration = Long.parseLong(options.getOrDefault("duration", "30"));
+        model = options.getOrDefault("model", "Car");
+        port = Integer.parseInt(options.getOrDefault("port", "8089"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("invalid option " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        // do not touch the persisted artifacts and do not log every message, unless configured otherwise
+        if (System.getProperty("varied.dataDirectory") == null)
+            System.setProperty("varied.dataDirectory", "");
+        if (System.getProperty("tinylog.level") == null)
+            System.setProperty("tinylog.level", "warning");
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        Main.start(port);
+        Project project = new Project("LoadTest");
+        ProjectManager.getInstance().addProject(project);
+        for (int i = 0; i < artifacts; i++)
+            project.addArtifact(new Artifact.FeatureModel(project, model + "-" + i,
+                    Main.getResourceURL("examples/" + model + ".xml").orElseThrow()));
+
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+        List<SimulatedUser> simulatedUsers = new ArrayList<>();
+        try {
+            System.out.printf("connecting %d users to each of %d artifacts%n", users, artifacts);
+            for (int i = 0; i < artifacts; i++)
+                for (int j = 0; j < users; j++) {
+                    SimulatedUser simulatedUser = new SimulatedUser(new Artifact.Path(project.getName(), model + "-" + i));
+                    simulatedUser.connect(container, port);
+                    simulatedUser.perform(SimulatedUser.OperationType.JOIN, null).get();
+                    simulatedUsers.add(simulatedUser);
+                }
+
+            // one user after another, so that every user can tell which new feature is its own
+            List<String> homeIDs = new ArrayList<>();
+            for (SimulatedUser simulatedUser : simulatedUsers)
+                homeIDs.add(simulatedUser.perform(SimulatedUser.OperationType.CREATE, simulatedUser.getRootID()).get());
+
+            System.out.printf("running for %d s (after %d s of warmup) at %.1f operations per second and user%n",
+                    duration, warmup, rate);
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            long start = System.nanoTime();
+            long measurementStart = start + TimeUnit.SECONDS.toNanos(warmup);
+            long end = measurementStart + TimeUnit.SECONDS.toNanos(duration);
+            List<CompletableFuture<Void>> done = new ArrayList<>();
+            Random random = new Random();
+            for (int i = 0; i < simulatedUsers.size(); i++) {
+                CompletableFuture<Void> userDone = new CompletableFuture<>();
+                done.add(userDone);
+                new Loop(simulatedUsers.get(i), homeIDs.get(i), scheduler, interval, measurementStart, end, userDone)
+                        .next(start + (long) (random.nextDouble() * interval), null);
+            }
+            CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).get();
+            report(TimeUnit.NANOSECONDS.toSeconds(end - measurementStart));
+        } finally {
+            scheduler.shutdownNow();
+            for (SimulatedUser simulatedUser : simulatedUsers)
+                simulatedUser.close();
+            LifeCycle.stop(container);
+            Main.stop();
+        }
+    }
+
+    /**
+     * Issues one user's operations on schedule, alternately creating and removing a feature below its own feature.
+     */
+    private class Loop {
+        private final SimulatedUser simulatedUser;
+        private final String homeID;
+        private final ScheduledExecutorService scheduler;
+        private final long interval, measurementStart, end;
+        private final CompletableFuture<Void> done;
+        private final Random random = new Random();
+
+        Loop(SimulatedUser simulatedUser, String homeID, ScheduledExecutorService scheduler,
+             long interval, long measurementStart, long end, CompletableFuture<Void> done) {
+            this.simulatedUser = simulatedUser;
+            this.homeID = homeID;
+            this.scheduler = scheduler;
+            this.interval = interval;
+            this.measurementStart = measurementStart;
+            this.end = end;
+            this.done = done;
+        }
+
+        /**
+         * Schedules the next operation. If this fails, the loop stops and completes exceptionally, so the load
+         * generator does not wait for it forever.
+         *
+         * @param dueTime   when the next operation should be sent
+         * @param createdID the feature created by the last operation, if any
+         */
+        void next(long dueTime, String createdID) {
+            if (dueTime >= end) {
+                done.complete(null);
+                return;
+            }
+            try {
+                scheduler.schedule(() -> {
+                    try {
+                        perform(dueTime, createdID);
+                    } catch (Throwable t) {
+                        done.completeExceptionally(t);
+                    }
+                }, Math.max(0, dueTime - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+            }
+        }
+
+        private void perform(long dueTime, String createdID) {
+            SimulatedUser.OperationType type = random.nextDouble() < exports
+                    ? SimulatedUser.OperationType.EXPORT
+                    : createdID == null ? SimulatedUser.OperationType.CREATE : SimulatedUser.OperationType.REMOVE;
+            String target = type == SimulatedUser.OperationType.CREATE ? homeID : createdID;
+            simulatedUser.perform(type, target).whenComplete((result, throwable) -> {
+                try {
+                    if (dueTime >= measurementStart)
+                        (type == SimulatedUser.OperationType.EXPORT ? exportStatistics : operationStatistics)
+                                .record(System.nanoTime() - dueTime, throwable == null);
+                    // after a failed removal, the feature may or may not exist, so a new one is created
+                    String nextCreatedID = type == SimulatedUser.OperationType.CREATE ? result
+                            : type == SimulatedUser.OperationType.REMOVE ? null : createdID;
+                    next(dueTime + interval, nextCreatedID);
+                } catch (Throwable t) {
+                    // thrown exceptions would only complete the future returned by whenComplete, which nobody waits for
+                    done.completeExceptionally(t);
+                }
+            });
+        }
+    }
+
+    private void report(long seconds) {
+        System.out.printf("%-10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "", "count", "errors", "per second", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        operationStatistics.print("operations", seconds);
+        exportStatistics.print("exports", seconds);
+    }
+
+    private static class Statistics {
+        private final List<Long> latencies = new ArrayList<>();
+        private long errors;
+
+        synchronized void record(long latency, boolean isOk) {
+            latencies.add(latency);
+            if (!isOk)
+                errors++;
+        }
+
+        private static double getPercentile(List<Long> sortedLatencies, double percentile) {
+            if (sortedLatencies.isEmpty())
+                return 0;
+            int index = (int) Math.ceil(percentile * sortedLatencies.size()) - 1;
+            return sortedLatencies.get(Math.max(0, index)) / 1e6;
+        }
+
+        synchronized void print(String name, long seconds) {
+            List<Long> sortedLatencies = new ArrayList<>(latencies);
+            Collections.sort(sortedLatencies);
+            System.out.printf("%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    name, latencies.size(), errors, (double) latencies.size() / seconds,
+                    getPercentile(sortedLatencies, 0.5), getPercentile(sortedLatencies, 0.99),
+                    getPercentile(sortedLatencies, 0.999), getPercentile(sortedLatencies, 1));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package de.featjar.varied.load;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.featjar.varied.api.Api;
+import de.featjar.varied.project.Artifact;
+
+import javax.websocket.*;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A user that connects to the server over a WebSocket and edits one artifact.
+ * It tracks the artifact's feature tree from received artifact data and patches, so it can tell when the effect of
+ * its own operation has arrived. At most one operation is pending at a time.
+ */
+class SimulatedUser extends Endpoint implements MessageHandler.Whole<String> {
+    private static final long TIMEOUT = 10;
+
+    enum OperationType {JOIN, CREATE, REMOVE, EXPORT}
+
+    private final Artifact.Path artifactPath;
+    private Session session;
+
+    // maps feature IDs to their parents' IDs
+    private final Map<String, String> parentIDs = new HashMap<>();
+    private String rootID;
+
+    private OperationType pendingType;
+    private String pendingTarget;
+    private Set<String> pendingChildren;
+    private CompletableFuture<String> pendingFuture;
+
+    SimulatedUser(Artifact.Path artifactPath) {
+        this.artifactPath = artifactPath;
+    }
+
+    void connect(WebSocketContainer container, int port) throws IOException, DeploymentException {
+        container.connectToServer(this, ClientEndpointConfig.Builder.create().build(),
+                URI.create("ws://localhost:" + port + "/socket/" + UUID.randomUUID()));
+    }
+
+    public void onOpen(Session session, EndpointConfig endpointConfig) {
+        this.session = session;
+        session.setMaxTextMessageBufferSize(64 * 1024 * 1024);
+        session.addMessageHandler(this);
+    }
+
+    void close() throws IOException {
+        session.close();
+    }
+
+    synchronized String getRootID() {
+        return rootID;
+    }
+
+    /**
+     * Sends a message and completes when its effect is received: the artifact data (JOIN), the ID of the new feature
+     * (CREATE), a patch removing the target feature (REMOVE) or the exported artifact (EXPORT).
+     */
+    synchronized CompletableFuture<String> perform(OperationType type, String target) {
+        if (pendingFuture != null)
+            throw new IllegalStateException("another operation is pending");
+        JsonObject message = new JsonObject();
+        message.add("artifactPath", artifactPathToJson());
+        switch (type) {
+            case JOIN:
+                message.addProperty("type", Api.TypeEnum.JOIN_REQUEST.toString());
+                break;
+            case CREATE:
+                message.addProperty("type", Api.TypeEnum.OPERATION_FEATURE_CREATE_BELOW.toString());
+                message.addProperty("featureParentID", target);
+                break;
+            case REMOVE:
+                message.addProperty("type", Api.TypeEnum.OPERATION_FEATURE_REMOVE.toString());
+                JsonArray featureIDs = new JsonArray();
+                featureIDs.add(target);
+                message.add("featureIDs", featureIDs);
+                break;
+            case EXPORT:
+                message.addProperty("type", Api.TypeEnum.EXPORT_ARTIFACT.toString());
+                message.addProperty("format", "XmlFeatureModelFormat");
+                break;
+        }
+        pendingType = type;
+        pendingTarget = target;
+        pendingChildren = getChildren(target);
+        CompletableFuture<String> future = pendingFuture = new CompletableFuture<>();
+        session.getAsyncRemote().sendText(message.toString(), result -> {
+            if (!result.isOK())
+                fail(result.getException());
+        });
+        return future.orTimeout(TIMEOUT, TimeUnit.SECONDS).whenComplete((result, throwable) -> clearPending(future));
+    }
+
+    private JsonObject artifactPathToJson() {
+        JsonObject o = new JsonObject();
+        o.addProperty("project", artifactPath.getProjectName());
+        o.addProperty("artifact", artifactPath.getArtifactName());
+        return o;
+    }
+
+    private Set<String> getChildren(String featureID) {
+        return parentIDs.entrySet().stream()
+                .filter(entry -> entry.getValue() != null && entry.getValue().equals(featureID))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    private synchronized void clearPending(CompletableFuture<String> future) {
+        if (pendingFuture == future)
+            pendingFuture = null;
+    }
+
+    private synchronized void complete(String result) {
+        if (pendingFuture != null)
+            pendingFuture.complete(result);
+    }
+
+    private synchronized void fail(Throwable throwable) {
+        if (pendingFuture != null)
+            pendingFuture.completeExceptionally(throwable);
+    }
+
+    public synchronized void onMessage(String text) {
+        JsonObject message = JsonParser.parseString(text).getAsJsonObject();
+        String type = message.get("type").getAsString();
+        if (type.equals(Api.TypeEnum.ERROR.toString())) {
+            fail(new RuntimeException(message.get("error").getAsString()));
+            return;
+        }
+        if (type.equals(Api.TypeEnum.EXPORT_ARTIFACT.toString()) && pendingType == OperationType.EXPORT) {
+            complete(null);
+            return;
+        }
+        if (type.equals(Api.TypeEnum.ARTIFACT_DATA.toString())) {
+            parentIDs.clear();
+            addFeatureTree(message.getAsJsonObject("payload").getAsJsonObject("featureTree"), null);
+        } else if (type.equals(Api.TypeEnum.ARTIFACT_DATA_PATCH.toString())) {
+            JsonObject patch = message.getAsJsonObject("payload");
+            for (String key : new String[]{"addedFeatures", "changedFeatures"})
+                for (JsonElement feature : patch.getAsJsonArray(key)) {
+                    JsonElement parentID = feature.getAsJsonObject().get("parentId");
+                    parentIDs.put(feature.getAsJsonObject().get("id").getAsString(),
+                            parentID == null || parentID.isJsonNull() ? null : parentID.getAsString());
+                }
+            for (JsonElement featureID : patch.getAsJsonArray("removedFeatureIDs"))
+                parentIDs.remove(featureID.getAsString());
+        } else
+            return;
+        checkPending();
+    }
+
+    private void addFeatureTree(JsonObject featureTree, String parentID) {
+        String featureID = featureTree.get("id").getAsString();
+        parentIDs.put(featureID, parentID);
+        if (parentID == null)
+            rootID = featureID;
+        for (JsonElement child : featureTree.getAsJsonArray("children"))
+            addFeatureTree(child.getAsJsonObject(), featureID);
+    }
+
+    private void checkPending() {
+        if (pendingFuture == null)
+            return;
+        if (pendingType == OperationType.JOIN)
+            complete(rootID);
+        if (pendingType == OperationType.CREATE)
+            getChildren(pendingTarget).stream()
+                    .filter(featureID -> !pendingChildren.contains(featureID))
+                    .findFirst()
+                    .ifPresent(this::complete);
+        if (pendingType == OperationType.REMOVE && !parentIDs.containsKey(pendingTarget))
+            complete(null);
+    }
+}
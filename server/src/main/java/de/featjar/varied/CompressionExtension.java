@@ -0,0 +1,70 @@
+package de.featjar.varied;
+
+import de.featjar.varied.metrics.Counter;
+import de.featjar.varied.metrics.Histogram;
+import de.featjar.varied.metrics.Metrics;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.internal.PerMessageDeflateExtension;
+
+/**
+ * WebSocket per-message compression (permessage-deflate) that does not compress messages below a size threshold.
+ * Small messages (e.g., users joining) hardly shrink, but large artifact data (with the same property names on every
+ * feature) does. Uncompressed messages are sent with their RSV1 bit unset, which leaves the compression context as is.
+ * Deflaters are shared by all sockets in a pool (see {@link Main}).
+ * <p>
+ * Uncompressed messages bypass the queue in which compressed frames wait for the deflater, so they could overtake
+ * the remaining frames of a compressed message. This is safe because each user's messages are sent one at a time
+ * (see {@link de.featjar.varied.session.User}), which is why errors are sent over the user's queue as well.
+ * <p>
+ * This extends Jetty's internal (not API) implementation of permessage-deflate, so it must be checked when Jetty is
+ * upgraded, which is why Jetty's version is pinned in the build.
+ */
+public class CompressionExtension extends PerMessageDeflateExtension {
+    static final int THRESHOLD = Integer.getInteger("varied.compressionThreshold", 1024);
+
+    private static final Counter UNCOMPRESSED_BYTES = Metrics.counter("varied_compression_input_bytes_total",
+            "size of sent messages before compression");
+    private static final Counter COMPRESSED_BYTES = Metrics.counter("varied_compression_output_bytes_total",
+            "size of sent messages after compression");
+    private static final Counter SKIPPED_MESSAGES = Metrics.counter("varied_compression_skipped_total",
+            "number of sent messages not compressed because they are below the compression threshold");
+    private static final Histogram COMPRESSION_TIME = Metrics.histogram("varied_compression_seconds",
+            "time for compressing a sent message, excluding the time its frames wait for the network");
+
+    // frames of one message are compressed one after another, each after the previous one has been written,
+    // so these are not accessed concurrently
+    private long compressionStartTime, compressionTime;
+
+    public void sendFrame(Frame frame, Callback callback, boolean batch) {
+        // only whole messages can be sent uncompressed, as all frames of a message share its RSV1 bit
+        if (frame.isDataFrame() && frame.getOpCode() != OpCode.CONTINUATION && frame.isFin() &&
+                frame.getPayloadLength() < THRESHOLD) {
+            SKIPPED_MESSAGES.increment();
+            getNextOutgoing().sendFrame(frame, callback, batch);
+            return;
+        }
+        if (frame.isDataFrame()) {
+            UNCOMPRESSED_BYTES.add(frame.getPayloadLength());
+            if (frame.getOpCode() != OpCode.CONTINUATION) {
+                compressionTime = 0;
+                compressionStartTime = System.nanoTime();
+            }
+        }
+        super.sendFrame(frame, callback, batch);
+    }
+
+    protected void nextOutgoingFrame(Frame frame, Callback callback, boolean batch) {
+        if (frame.isDataFrame()) {
+            COMPRESSED_BYTES.add(frame.getPayloadLength());
+            compressionTime += System.nanoTime() - compressionStartTime;
+            if (frame.isFin())
+                COMPRESSION_TIME.record(compressionTime);
+            else
+                // the next frame is compressed when this one has been written
+                callback = Callback.from(() -> compressionStartTime = System.nanoTime(), callback);
+        }
+        super.nextOutgoingFrame(frame, callback, batch);
+    }
+}
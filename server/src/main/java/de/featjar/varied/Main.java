@@ -1,5 +1,8 @@
 package de.featjar.varied;
 
+import de.featjar.varied.metrics.MetricsServlet;
+import de.featjar.varied.project.ResidencyManager;
+import de.featjar.varied.session.Dispatcher;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
@@ -9,8 +12,13 @@ import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.compression.CompressionPool;
+import org.eclipse.jetty.util.compression.DeflaterPool;
 import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.websocket.core.WebSocketExtensionRegistry;
+import org.eclipse.jetty.websocket.core.server.WebSocketServerComponents;
 import org.eclipse.jetty.websocket.javax.server.config.JavaxWebSocketServletContainerInitializer;
+import org.pmw.tinylog.Logger;
 
 import java.awt.*;
 import java.net.MalformedURLException;
@@ -19,21 +27,39 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.zip.Deflater;
 
 public class Main {
     private static final Server server = new Server();
     private static final ServerConnector serverConnector = new ServerConnector(server);
+    private static final boolean COMPRESSION = Boolean.parseBoolean(System.getProperty("varied.compression", "true"));
+    private static final int COMPRESSION_LEVEL = Integer.getInteger("varied.compressionLevel", Deflater.BEST_SPEED);
 
     public static void main(String[] args) throws Exception {
         int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
         boolean noBrowse = args.length > 1 && args[1].equals("--no-browse");
+        start(port);
+        if (!noBrowse)
+            Desktop.getDesktop().browse(new URI("http://localhost:" + port));
+        server.join();
+    }
+
+    /**
+     * Starts the server without waiting for it to stop (e.g., to run it in the same process as a load generator).
+     */
+    public static void start(int port) throws Exception {
         serverConnector.setPort(port);
         server.addConnector(serverConnector);
         server.setHandler(getServletContextHandler());
+        // deflaters are pooled for all sockets, as every socket compresses separately
+        server.addBean(new DeflaterPool(CompressionPool.DEFAULT_CAPACITY, COMPRESSION_LEVEL, true));
+        ResidencyManager.getInstance().start();
+        Logger.info("handling messages on {} threads", Dispatcher.getInstance().isUsingVirtualThreads() ? "virtual" : "platform");
         server.start();
-        if (!noBrowse)
-            Desktop.getDesktop().browse(new URI("http://localhost:" + port));
-        server.join();
+    }
+
+    public static void stop() throws Exception {
+        server.stop();
     }
 
     public static Optional<URL> getResourceURL(String fileName) {
@@ -55,10 +81,17 @@ public class Main {
     private static ServletContextHandler getServletContextHandler() {
         ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
         getBaseResource().ifPresent(servletContextHandler::setBaseResource);
+        servletContextHandler.addServlet(new ServletHolder("metrics", MetricsServlet.class), "/metrics");
         servletContextHandler.addServlet(new ServletHolder("default", DefaultServlet.class),"/");
         JavaxWebSocketServletContainerInitializer.configure(servletContextHandler,
                 (servletContext, wsContainer) -> {
                     wsContainer.setDefaultMaxSessionIdleTimeout(0);
+                    WebSocketExtensionRegistry extensionRegistry =
+                            WebSocketServerComponents.getWebSocketComponents(servletContext).getExtensionRegistry();
+                    if (COMPRESSION)
+                        extensionRegistry.register("permessage-deflate", CompressionExtension.class);
+                    else
+                        extensionRegistry.unregister("permessage-deflate");
                     wsContainer.addEndpoint(Socket.class);
                 });
         return servletContextHandler;
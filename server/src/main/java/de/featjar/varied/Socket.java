@@ -1,8 +1,14 @@
 package de.featjar.varied;
 
 import de.featjar.varied.api.Api;
+import de.featjar.varied.api.EncodedMessage;
 import de.featjar.varied.api.Message;
 import de.featjar.varied.api.MessageSerializer;
+import de.featjar.varied.metrics.Counter;
+import de.featjar.varied.metrics.Family;
+import de.featjar.varied.metrics.Histogram;
+import de.featjar.varied.metrics.Metrics;
+import de.featjar.varied.session.Dispatcher;
 import de.featjar.varied.session.UserManager;
 import org.pmw.tinylog.Logger;
 
@@ -10,102 +16,175 @@ import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
 import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
+/**
+ * Messages are encoded as JSON, unless the client negotiates the binary encoding with the {@link #BINARY_SUBPROTOCOL}
+ * subprotocol (see {@link MessageSerializer.BinaryMessageEncoder}).
+ * Either way, messages may be received as text or binary frames.
+ */
 @ServerEndpoint(
         value = "/socket/{userID}",
-        encoders = MessageSerializer.MessageEncoder.class,
-        decoders = MessageSerializer.MessageDecoder.class)
+        subprotocols = Socket.BINARY_SUBPROTOCOL)
 public class Socket {
+    public static final String BINARY_SUBPROTOCOL = "varied-binary";
+
+    private static final Family<Histogram> DISPATCH_TIME = Metrics.histogram("varied_dispatch_seconds",
+            "time for handling a received message on the socket's thread (until it is handed to a session)", "type");
+    private static final Histogram SEND_TIME = Metrics.histogram("varied_send_seconds", "time until a sent message is written to the network");
+    private static final Counter SENT_BYTES = Metrics.counter("varied_sent_bytes_total", "size of sent messages (in bytes, or characters for JSON, which mostly is ASCII)");
+
+    private static final MessageSerializer.MessageDecoder textDecoder = new MessageSerializer.MessageDecoder();
+    private static final MessageSerializer.BinaryMessageDecoder binaryDecoder = new MessageSerializer.BinaryMessageDecoder();
+
+    private final Executor executor = Dispatcher.getInstance().newSocketExecutor();
     private Session session;
     private UUID userID;
-
-    // This essentially forces the server to handle only one message at a time.
-    // This assumption simplifies multithreaded access to feature models, but limits server performance.
-    private static final Object lock = new Object();
+    private EncodedMessage.Format format;
 
     @OnOpen
     public void onOpen(@PathParam("userID") String _userID, Session session) {
-        synchronized (lock) {
+        try {
+            Objects.requireNonNull(_userID, "user ID not supplied");
+            Logger.debug("WebSocket opened for user {}", userID);
+            this.session = session;
+            session.setMaxIdleTimeout(0);
+            format = BINARY_SUBPROTOCOL.equals(session.getNegotiatedSubprotocol())
+                    ? EncodedMessage.Format.BINARY
+                    : EncodedMessage.Format.TEXT;
+            EncodedMessage.addRecipient(format);
             try {
-                Objects.requireNonNull(_userID, "user ID not supplied");
-                Logger.debug("WebSocket opened for user {}", userID);
-                this.session = session;
-                session.setMaxIdleTimeout(0);
-                try {
-                    this.userID = UUID.fromString(_userID);
-                    UserManager.getInstance().register(this, userID);
-                } catch (Throwable t) {
-                    send(new Api.Error(t));
-                    session.close();
-                }
+                this.userID = UUID.fromString(_userID);
+                UserManager.getInstance().register(this, userID);
             } catch (Throwable t) {
-                Logger.error(t);
+                send(new EncodedMessage(new Api.Error(t)), isOk -> close());
             }
+        } catch (Throwable t) {
+            Logger.error(t);
         }
     }
 
     @OnClose
     public void onClose() {
-        synchronized (lock) {
-            Logger.debug("WebSocket closed for user {}", userID);
-            UserManager.getInstance().unregister(userID);
+        Logger.debug("WebSocket closed for user {}", userID);
+        if (format != null)
+            EncodedMessage.removeRecipient(format);
+        UserManager.getInstance().unregister(userID);
+    }
+
+    // Callbacks may run concurrently for different sockets. Messages concerning a session are handed over to that
+    // session's mailbox, so this does not block other sockets (see de.featjar.varied.session.Dispatcher).
+    // Messages are decoded on the socket's thread, as the received buffer may be reused afterwards.
+    @OnMessage
+    public void onMessage(String text) {
+        Message message;
+        try {
+            message = textDecoder.decode(text);
+        } catch (Throwable t) {
+            sendError(t);
+            return;
         }
+        executor.execute(() -> onMessage(message));
     }
 
     @OnMessage
-    public void onMessage(Message message) {
-        synchronized (lock) {
-            try {
-                try {
-                    UserManager.getInstance().onMessage(userID, message);
-                } catch (Throwable t) {
-                    send(new Api.Error(t));
-                }
-            } catch (SendException e) {
-                Logger.error(e);
-            }
+    public void onMessage(ByteBuffer buffer) {
+        Message message;
+        try {
+            message = binaryDecoder.decode(buffer);
+        } catch (Throwable t) {
+            sendError(t);
+            return;
+        }
+        executor.execute(() -> onMessage(message));
+    }
+
+    private void onMessage(Message message) {
+        long startTime = System.nanoTime();
+        try {
+            UserManager.getInstance().onMessage(userID, message);
+        } catch (Throwable t) {
+            sendError(t);
+        } finally {
+            DISPATCH_TIME.get(message.getType()).recordSince(startTime);
         }
     }
 
     @OnError
     public void onError(Throwable t) {
-        synchronized (lock) {
-            try {
-                Logger.debug("WebSocket error:");
-                Logger.debug(t);
-                // Most likely cause is a user closing their browser. Check to see if
-                // the root cause is EOF and if it is ignore it.
-                // Protect against infinite loops. (see Apache Tomcat examples)
-                int count = 0;
-                Throwable root = t;
-                while (root.getCause() != null && count < 20) {
-                    root = root.getCause();
-                    count++;
-                }
-                // If this is triggered by the user closing their browser ignore it. Else, close the socket.
-                if (!(root instanceof EOFException)) {
-                    Logger.debug("closing WebSocket due to unexpected error");
-                    session.close();
-                }
-            } catch (Throwable t2) {
-                Logger.error(t2);
+        try {
+            Logger.debug("WebSocket error:");
+            Logger.debug(t);
+            // Most likely cause is a user closing their browser. Check to see if
+            // the root cause is EOF and if it is ignore it.
+            // Protect against infinite loops. (see Apache Tomcat examples)
+            int count = 0;
+            Throwable root = t;
+            while (root.getCause() != null && count < 20) {
+                root = root.getCause();
+                count++;
+            }
+            // If this is triggered by the user closing their browser ignore it. Else, close the socket.
+            if (!(root instanceof EOFException)) {
+                Logger.debug("closing WebSocket due to unexpected error");
+                session.close();
             }
+        } catch (Throwable t2) {
+            Logger.error(t2);
         }
     }
 
-    public void send(Message.IEncodable message) throws SendException {
+    /**
+     * Sends an error over the user's outgoing queue, which sends one message at a time, so the error is not sent
+     * between the frames of a message that is being sent (see {@link CompressionExtension}).
+     * Only if the user is not registered (yet), the error is sent directly.
+     */
+    private void sendError(Throwable t) {
+        if (userID == null || !UserManager.getInstance().send(userID, new Api.Error(t)))
+            send(new Api.Error(t));
+    }
+
+    public void send(Message.IEncodable message) {
+        send(new EncodedMessage(message), isOk -> {
+        });
+    }
+
+    /**
+     * Sends a message without blocking. The callback is notified whether the message was sent successfully.
+     */
+    public void send(EncodedMessage encodedMessage, Consumer<Boolean> callback) {
         try {
-            session.getBasicRemote().sendObject(message);
+            long startTime = System.nanoTime();
+            SendHandler sendHandler = result -> {
+                SEND_TIME.recordSince(startTime);
+                if (!result.isOK())
+                    Logger.debug(result.getException());
+                callback.accept(result.isOK());
+            };
+            if (format == EncodedMessage.Format.BINARY) {
+                ByteBuffer binary = encodedMessage.getBinary();
+                SENT_BYTES.add(binary.remaining());
+                session.getAsyncRemote().sendBinary(binary, sendHandler);
+            } else {
+                SENT_BYTES.add(encodedMessage.getText().length());
+                session.getAsyncRemote().sendText(encodedMessage.getText(), sendHandler);
+            }
         } catch (Exception e) {
-            throw new SendException(e);
+            Logger.debug(e);
+            callback.accept(false);
         }
     }
 
-    public static class SendException extends Exception {
-        SendException(Throwable cause) {
-            super(cause);
+    public void close() {
+        try {
+            session.close();
+        } catch (IOException e) {
+            Logger.debug(e);
         }
     }
 }
\ No newline at end of file
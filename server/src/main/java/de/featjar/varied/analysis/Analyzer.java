@@ -0,0 +1,381 @@
+package de.featjar.varied.analysis;
+
+import de.featjar.varied.metrics.Counter;
+import de.featjar.varied.metrics.Family;
+import de.featjar.varied.metrics.Histogram;
+import de.featjar.varied.metrics.Metrics;
+import de.featjar.varied.util.ModelSnapshot;
+
+import java.util.*;
+
+/**
+ * Analyzes the snapshots of one feature model (e.g., for dead features) by translating them into a formula in
+ * conjunctive normal form and asking a {@link Solver}.
+ * Analyses are incremental in three ways: Results are cached for the latest revision, so users asking for the same
+ * analysis share it. Variables keep their numbers across revisions, so when a revision only adds clauses (e.g.,
+ * a feature created below a feature without group), the solver is kept with everything it has learned, otherwise
+ * a new solver is created. Solutions found by the solver are kept as long as they remain valid, and every feature
+ * that is selected (or deselected) in some solution needs no solver call to be proven alive (or not core).
+ * An analyzer is used by one thread at a time. Analyses can be stopped (see {@link Interruption}) and resumed later
+ * without losing the results found so far.
+ */
+public class Analyzer {
+    public enum Type {VOID_MODEL, DEAD_FEATURES, CORE_FEATURES, FALSE_OPTIONAL_FEATURES}
+
+    /**
+     * Lets the caller stop a running analysis.
+     */
+    public interface Interruption {
+        /**
+         * @return whether the analysis should stop as soon as possible (e.g., because its result is not needed anymore)
+         */
+        boolean isCancelled();
+
+        /**
+         * @return whether the analysis should stop after the current feature, so it can be resumed later
+         */
+        boolean shouldYield();
+    }
+
+    /**
+     * Thrown when an analysis is stopped by its {@link Interruption}.
+     */
+    public static class StoppedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StoppedException() {
+            super("analysis stopped");
+        }
+    }
+
+    private static final int SOLUTION_CACHE_SIZE = Integer.getInteger("varied.analysisSolutionCacheSize", 256);
+
+    private static final Family<Histogram> ANALYSIS_TIME = Metrics.histogram("varied_analysis_seconds",
+            "time for analyzing a feature model, including preparing the solver", "analysis");
+    private static final Family<Counter> SOLVERS = Metrics.counter("varied_analysis_solvers_total",
+            "number of revisions whose solver was created anew (new) or reused from a previous revision (reused)", "mode");
+    private static final Counter SOLVER_CALLS = Metrics.counter("varied_analysis_solver_calls_total",
+            "number of solver calls that could not be answered by a cached solution");
+
+    /**
+     * a clause with sorted literals, so that clauses of different revisions can be compared
+     */
+    private static class Clause {
+        final int[] literals;
+
+        Clause(int... literals) {
+            this.literals = literals.clone();
+            Arrays.sort(this.literals);
+        }
+
+        boolean isSatisfiedBy(boolean[] solution) {
+            for (int literal : literals) {
+                int variable = Math.abs(literal);
+                // variables added after the solution was found are assumed to be false
+                boolean value = variable < solution.length && solution[variable];
+                if (value == (literal > 0))
+                    return true;
+            }
+            return false;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Clause && Arrays.equals(literals, ((Clause) o).literals);
+        }
+
+        public int hashCode() {
+            return Arrays.hashCode(literals);
+        }
+    }
+
+    /**
+     * what analyses need to know about a feature besides its variable
+     */
+    private static class FeatureInfo {
+        final String featureID;
+        final int variable;
+        final FeatureInfo parent;
+        final boolean isOptional;
+
+        FeatureInfo(String featureID, int variable, FeatureInfo parent, boolean isOptional) {
+            this.featureID = featureID;
+            this.variable = variable;
+            this.parent = parent;
+            this.isOptional = isOptional;
+        }
+    }
+
+    // stable across revisions, so that clauses of different revisions can be compared
+    private final Map<String, Integer> variables = new HashMap<>();
+    private final Map<ModelSnapshot.Formula, Integer> formulaVariables = new IdentityHashMap<>();
+
+    private Solver solver;
+    private Set<Clause> clauses = Set.of();
+    private final LinkedList<boolean[]> solutions = new LinkedList<>();
+
+    private long revision = -1;
+    private final Map<String, FeatureInfo> features = new LinkedHashMap<>();
+    private Boolean isVoid;
+    private final Map<Type, Map<String, Boolean>> results = new EnumMap<>(Type.class);
+
+    /**
+     * @return whether the feature model has no valid configuration
+     */
+    public boolean isVoid(ModelSnapshot snapshot, Interruption interruption) {
+        long startTime = System.nanoTime();
+        try {
+            prepare(snapshot, interruption);
+            return isVoid();
+        } finally {
+            ANALYSIS_TIME.get(Type.VOID_MODEL).recordSince(startTime);
+        }
+    }
+
+    /**
+     * Runs a feature analysis on the given features, or on all features if none are given.
+     *
+     * @return IDs of all given features that have the analyzed property (e.g., that are dead), in preorder
+     * @throws StoppedException if the analysis is stopped, results for features analyzed so far are kept for
+     *                          the next call on the same snapshot
+     */
+    public List<String> getFeatures(ModelSnapshot snapshot, Type type, String[] featureIDs, Interruption interruption) {
+        if (type == Type.VOID_MODEL)
+            throw new IllegalArgumentException("not a feature analysis");
+        long startTime = System.nanoTime();
+        try {
+            prepare(snapshot, interruption);
+            Collection<FeatureInfo> analyzedFeatures;
+            if (featureIDs == null)
+                analyzedFeatures = features.values();
+            else {
+                Set<FeatureInfo> givenFeatures = new HashSet<>();
+                for (String featureID : featureIDs) {
+                    FeatureInfo feature = features.get(featureID);
+                    if (feature == null)
+                        throw new RuntimeException("no feature found for ID " + featureID);
+                    givenFeatures.add(feature);
+                }
+                analyzedFeatures = new ArrayList<>();
+                for (FeatureInfo feature : features.values())
+                    if (givenFeatures.contains(feature))
+                        analyzedFeatures.add(feature);
+            }
+            Map<String, Boolean> typeResults = results.computeIfAbsent(type, _type -> new HashMap<>());
+            List<String> result = new ArrayList<>();
+            for (FeatureInfo feature : analyzedFeatures) {
+                if (!typeResults.containsKey(feature.featureID) &&
+                        (interruption.isCancelled() || interruption.shouldYield()))
+                    throw new StoppedException();
+                if (typeResults.computeIfAbsent(feature.featureID, _featureID -> analyze(type, feature)))
+                    result.add(feature.featureID);
+            }
+            return result;
+        } finally {
+            ANALYSIS_TIME.get(type).recordSince(startTime);
+        }
+    }
+
+    private boolean isVoid() {
+        if (isVoid == null)
+            isVoid = !solve();
+        return isVoid;
+    }
+
+    private boolean isDead(FeatureInfo feature) {
+        return results.computeIfAbsent(Type.DEAD_FEATURES, _type -> new HashMap<>())
+                .computeIfAbsent(feature.featureID, _featureID -> analyze(Type.DEAD_FEATURES, feature));
+    }
+
+    private boolean analyze(Type type, FeatureInfo feature) {
+        // as usual, a void feature model has only dead features
+        if (isVoid())
+            return type == Type.DEAD_FEATURES;
+        switch (type) {
+            case DEAD_FEATURES:
+                return !hasSolution(solution -> solution[feature.variable]) && !solve(feature.variable);
+            case CORE_FEATURES:
+                return !hasSolution(solution -> !solution[feature.variable]) && !solve(-feature.variable);
+            case FALSE_OPTIONAL_FEATURES:
+                if (!feature.isOptional)
+                    return false;
+                if (hasSolution(solution -> solution[feature.parent.variable] && !solution[feature.variable]))
+                    return false;
+                // if the parent is dead, the feature is dead as well, which is reported separately
+                return !solve(feature.parent.variable, -feature.variable) && !isDead(feature.parent);
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private interface SolutionPredicate {
+        boolean test(boolean[] solution);
+    }
+
+    private boolean hasSolution(SolutionPredicate predicate) {
+        for (boolean[] solution : solutions)
+            if (predicate.test(solution))
+                return true;
+        return false;
+    }
+
+    private boolean solve(int... assumptions) {
+        SOLVER_CALLS.increment();
+        if (!solver.solve(assumptions))
+            return false;
+        if (solutions.size() >= SOLUTION_CACHE_SIZE)
+            solutions.removeFirst();
+        solutions.addLast(solver.getModel());
+        return true;
+    }
+
+    /**
+     * Translates the snapshot into clauses and updates the solver, unless the snapshot is already prepared.
+     */
+    private void prepare(ModelSnapshot snapshot, Interruption interruption) {
+        if (snapshot.getRevision() == revision) {
+            solver.setCancellation(interruption::isCancelled);
+            return;
+        }
+        revision = snapshot.getRevision();
+        isVoid = null;
+        results.clear();
+        Set<Clause> newClauses = toClauses(snapshot);
+        if (solver != null && newClauses.containsAll(clauses)) {
+            SOLVERS.get("reused").increment();
+            List<Clause> addedClauses = new ArrayList<>();
+            for (Clause clause : newClauses)
+                if (!clauses.contains(clause)) {
+                    addedClauses.add(clause);
+                    solver.addClause(clause.literals);
+                }
+            solutions.removeIf(solution -> addedClauses.stream().anyMatch(clause -> !clause.isSatisfiedBy(solution)));
+            // the remaining solutions are extended with the new variables, which they assume to be false
+            int numberOfVariables = variables.size() + formulaVariables.size();
+            solutions.replaceAll(solution -> Arrays.copyOf(solution, numberOfVariables + 1));
+        } else {
+            SOLVERS.get("new").increment();
+            // variables of removed features are not needed anymore, so they are numbered anew
+            variables.clear();
+            formulaVariables.clear();
+            newClauses = toClauses(snapshot);
+            solver = new Solver();
+            solver.ensureVariables(variables.size() + formulaVariables.size());
+            for (Clause clause : newClauses)
+                solver.addClause(clause.literals);
+            solutions.clear();
+        }
+        solver.setCancellation(interruption::isCancelled);
+        clauses = newClauses;
+    }
+
+    private int getVariable(String key) {
+        return variables.computeIfAbsent(key, _key -> variables.size() + formulaVariables.size() + 1);
+    }
+
+    private int getVariable(ModelSnapshot.Formula formula) {
+        return formulaVariables.computeIfAbsent(formula, _formula -> variables.size() + formulaVariables.size() + 1);
+    }
+
+    private Set<Clause> toClauses(ModelSnapshot snapshot) {
+        features.clear();
+        Set<Clause> clauses = new LinkedHashSet<>();
+        Map<String, Integer> variablesByName = new HashMap<>();
+        ModelSnapshot.Feature root = snapshot.getRoot();
+        FeatureInfo rootInfo = new FeatureInfo(root.getID(), getVariable(root.getID()), null, false);
+        features.put(root.getID(), rootInfo);
+        variablesByName.put(root.getName(), rootInfo.variable);
+        clauses.add(new Clause(rootInfo.variable));
+        addClauses(clauses, root, rootInfo, variablesByName);
+        for (ModelSnapshot.Formula formula : snapshot.getConstraints())
+            addClauses(clauses, formula, variablesByName);
+        return clauses;
+    }
+
+    private void addClauses(Set<Clause> clauses, ModelSnapshot.Feature parent, FeatureInfo parentInfo,
+                            Map<String, Integer> variablesByName) {
+        int parentVariable = parentInfo.variable;
+        List<ModelSnapshot.Feature> children = parent.getChildren();
+        int[] childVariables = new int[children.size()];
+        for (int i = 0; i < children.size(); i++) {
+            ModelSnapshot.Feature child = children.get(i);
+            int variable = childVariables[i] = getVariable(child.getID());
+            variablesByName.put(child.getName(), variable);
+            boolean isOptional = parent.getGroup() != ModelSnapshot.Group.AND || !child.isMandatory();
+            FeatureInfo childInfo = new FeatureInfo(child.getID(), variable, parentInfo, isOptional);
+            features.put(child.getID(), childInfo);
+            clauses.add(new Clause(-variable, parentVariable));
+            if (!isOptional)
+                clauses.add(new Clause(-parentVariable, variable));
+            addClauses(clauses, child, childInfo, variablesByName);
+        }
+        if (parent.getGroup() != ModelSnapshot.Group.AND && children.size() > 0) {
+            int[] groupClause = new int[children.size() + 1];
+            groupClause[0] = -parentVariable;
+            System.arraycopy(childVariables, 0, groupClause, 1, childVariables.length);
+            clauses.add(new Clause(groupClause));
+        }
+        if (parent.getGroup() == ModelSnapshot.Group.ALTERNATIVE)
+            for (int i = 0; i < childVariables.length; i++)
+                for (int j = i + 1; j < childVariables.length; j++)
+                    clauses.add(new Clause(-childVariables[i], -childVariables[j]));
+    }
+
+    private void addClauses(Set<Clause> clauses, ModelSnapshot.Formula formula, Map<String, Integer> variablesByName) {
+        // conjunctions are split into separate constraints, so small constraints need no auxiliary variables
+        if (formula.getType() == ModelSnapshot.Formula.Type.AND)
+            for (ModelSnapshot.Formula child : formula.getChildren())
+                addClauses(clauses, child, variablesByName);
+        else
+            clauses.add(new Clause(toLiteral(clauses, formula, variablesByName)));
+    }
+
+    /**
+     * Tseitin transformation, which introduces an auxiliary variable that is equivalent to each non-literal formula.
+     * Auxiliary variables are identified by the formula, which is shared by all snapshots as long as it does not
+     * change, so its clauses stay the same as well.
+     */
+    private int toLiteral(Set<Clause> clauses, ModelSnapshot.Formula formula, Map<String, Integer> variablesByName) {
+        switch (formula.getType()) {
+            case LITERAL:
+            case NEGATED_LITERAL:
+                // variables that do not belong to any feature are free
+                int variable = variablesByName.computeIfAbsent(formula.getVariable(),
+                        name -> getVariable("variable:" + name));
+                return formula.getType() == ModelSnapshot.Formula.Type.LITERAL ? variable : -variable;
+            case NOT:
+                return -toLiteral(clauses, formula.getChildren().get(0), variablesByName);
+            default:
+                break;
+        }
+        int[] literals = new int[formula.getChildren().size()];
+        for (int i = 0; i < literals.length; i++)
+            literals[i] = toLiteral(clauses, formula.getChildren().get(i), variablesByName);
+        int auxiliaryVariable = getVariable(formula);
+        switch (formula.getType()) {
+            case IMPLIES:
+                literals[0] = -literals[0];
+                // fall through, as a => b is equivalent to !a | b
+            case OR:
+            case AND:
+                // for conjunctions, all literals are negated, as a & b is equivalent to !(!a | !b)
+                int sign = formula.getType() == ModelSnapshot.Formula.Type.AND ? -1 : 1;
+                int[] clause = new int[literals.length + 1];
+                clause[0] = -sign * auxiliaryVariable;
+                for (int i = 0; i < literals.length; i++) {
+                    clause[i + 1] = sign * literals[i];
+                    clauses.add(new Clause(sign * auxiliaryVariable, -sign * literals[i]));
+                }
+                clauses.add(new Clause(clause));
+                break;
+            case BIIMPLIES:
+                clauses.add(new Clause(-auxiliaryVariable, -literals[0], literals[1]));
+                clauses.add(new Clause(-auxiliaryVariable, literals[0], -literals[1]));
+                clauses.add(new Clause(auxiliaryVariable, literals[0], literals[1]));
+                clauses.add(new Clause(auxiliaryVariable, -literals[0], -literals[1]));
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+        return auxiliaryVariable;
+    }
+}
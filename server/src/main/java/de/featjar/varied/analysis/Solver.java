@@ -0,0 +1,498 @@
+package de.featjar.varied.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A small incremental SAT solver (conflict-driven clause learning with two watched literals), so analyses need no
+ * solver library. It is incremental in two ways: clauses can be added between calls to {@link #solve(int...)},
+ * and learned clauses, variable activities and saved phases are kept between calls, which are usually similar
+ * (e.g., one call per feature).
+ * Literals are given as in DIMACS, that is, a positive or negative variable. Variables are numbered from 1.
+ * The solver decides the variables that took part in recent conflicts first (VSIDS), and among variables that did
+ * not, those with lower numbers first, which works well for feature models (parents first). It restarts after a
+ * growing number of conflicts (Luby sequence) and then deletes the half of its learned clauses that was used least
+ * recently, so a solver that is kept for many calls does not slow down with clauses it does not need anymore.
+ */
+class Solver {
+    private static final int TRUE = 1, FALSE = -1, UNASSIGNED = 0;
+    private static final int RESTART_INTERVAL = 100;
+    private static final double VARIABLE_DECAY = 0.95, CLAUSE_DECAY = 0.999;
+    private static final double RESCALE_LIMIT = 1e100;
+
+    private int numberOfVariables;
+
+    // indexed by variable
+    private int[] values = new int[1];
+    private int[] levels = new int[1];
+    private int[][] reasons = new int[1][];
+    private boolean[] phases = new boolean[1];
+    private boolean[] seen = new boolean[1];
+    private double[] activities = new double[1];
+
+    // indexed by literal, the clauses in which the literal is one of the first two (watched) literals
+    private List<List<int[]>> watches = new ArrayList<>(List.of(new ArrayList<>(), new ArrayList<>()));
+
+    private int[] trail = new int[1];
+    private int trailSize, propagationHead;
+    private final List<Integer> trailLimits = new ArrayList<>();
+
+    // unassigned variables (and some assigned ones, which are skipped), by activity
+    private final VariableHeap heap = new VariableHeap();
+    private double variableIncrement = 1;
+
+    // learned clauses with their activities, which are increased whenever they take part in a conflict
+    private final Map<int[], Double> learnedClauses = new IdentityHashMap<>();
+    private double clauseIncrement = 1;
+    private int numberOfClauses;
+    private int maximumLearnedClauses;
+
+    private int restarts;
+    private boolean isUnsatisfiable;
+    private boolean[] model;
+    private BooleanSupplier isCancelled = () -> false;
+
+    /**
+     * A binary max-heap of variables, ordered by activity and then by number, that knows where each variable is.
+     */
+    private class VariableHeap {
+        private int[] heap = new int[1];
+        private int[] positions = new int[1];
+        private int size;
+
+        private boolean isBefore(int variable, int otherVariable) {
+            return activities[variable] > activities[otherVariable] ||
+                    activities[variable] == activities[otherVariable] && variable < otherVariable;
+        }
+
+        void grow(int capacity) {
+            heap = Arrays.copyOf(heap, capacity);
+            int oldCapacity = positions.length;
+            positions = Arrays.copyOf(positions, capacity);
+            Arrays.fill(positions, oldCapacity, capacity, -1);
+        }
+
+        boolean contains(int variable) {
+            return positions[variable] >= 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void insert(int variable) {
+            if (contains(variable))
+                return;
+            heap[size] = variable;
+            positions[variable] = size;
+            moveUp(size++);
+        }
+
+        void update(int variable) {
+            if (contains(variable))
+                moveUp(positions[variable]);
+        }
+
+        int removeFirst() {
+            int variable = heap[0];
+            positions[variable] = -1;
+            if (--size > 0) {
+                heap[0] = heap[size];
+                positions[heap[0]] = 0;
+                moveDown(0);
+            }
+            return variable;
+        }
+
+        private void moveUp(int position) {
+            int variable = heap[position];
+            while (position > 0) {
+                int parentPosition = (position - 1) / 2;
+                if (!isBefore(variable, heap[parentPosition]))
+                    break;
+                heap[position] = heap[parentPosition];
+                positions[heap[position]] = position;
+                position = parentPosition;
+            }
+            heap[position] = variable;
+            positions[variable] = position;
+        }
+
+        private void moveDown(int position) {
+            int variable = heap[position];
+            while (2 * position + 1 < size) {
+                int childPosition = 2 * position + 1;
+                if (childPosition + 1 < size && isBefore(heap[childPosition + 1], heap[childPosition]))
+                    childPosition++;
+                if (!isBefore(heap[childPosition], variable))
+                    break;
+                heap[position] = heap[childPosition];
+                positions[heap[position]] = position;
+                position = childPosition;
+            }
+            heap[position] = variable;
+            positions[variable] = position;
+        }
+    }
+
+    // internally, literals are encoded as 2 * variable (+ 1 if negative), so the negation is one bit away
+    private static int toLiteral(int dimacsLiteral) {
+        return dimacsLiteral > 0 ? 2 * dimacsLiteral : -2 * dimacsLiteral + 1;
+    }
+
+    private static int getVariable(int literal) {
+        return literal >> 1;
+    }
+
+    private int getValue(int literal) {
+        int value = values[getVariable(literal)];
+        return (literal & 1) == 0 ? value : -value;
+    }
+
+    int getNumberOfVariables() {
+        return numberOfVariables;
+    }
+
+    int getNumberOfLearnedClauses() {
+        return learnedClauses.size();
+    }
+
+    /**
+     * Sets a condition that is checked regularly while solving, so that long calls can be cancelled.
+     */
+    void setCancellation(BooleanSupplier isCancelled) {
+        this.isCancelled = isCancelled;
+    }
+
+    void ensureVariables(int numberOfVariables) {
+        if (numberOfVariables <= this.numberOfVariables)
+            return;
+        int capacity = numberOfVariables + 1;
+        if (capacity > values.length) {
+            capacity = Math.max(capacity, 2 * values.length);
+            values = Arrays.copyOf(values, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            reasons = Arrays.copyOf(reasons, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+            activities = Arrays.copyOf(activities, capacity);
+            trail = Arrays.copyOf(trail, capacity);
+            heap.grow(capacity);
+            while (watches.size() < 2 * capacity)
+                watches.add(new ArrayList<>());
+        }
+        for (int variable = this.numberOfVariables + 1; variable <= numberOfVariables; variable++)
+            heap.insert(variable);
+        this.numberOfVariables = numberOfVariables;
+    }
+
+    /**
+     * Adds a clause, which can only make the formula harder to satisfy, so all learned clauses stay valid.
+     */
+    void addClause(int... dimacsLiterals) {
+        if (isUnsatisfiable)
+            return;
+        backtrack(0);
+        for (int dimacsLiteral : dimacsLiterals)
+            ensureVariables(Math.abs(dimacsLiteral));
+        Set<Integer> literals = new LinkedHashSet<>();
+        for (int dimacsLiteral : dimacsLiterals) {
+            int literal = toLiteral(dimacsLiteral);
+            int value = getValue(literal);
+            if (value == TRUE || literals.contains(literal ^ 1))
+                return;
+            // literals that are false without any decision stay false, so they can be omitted
+            if (value == UNASSIGNED)
+                literals.add(literal);
+        }
+        if (literals.isEmpty())
+            isUnsatisfiable = true;
+        else if (literals.size() == 1) {
+            assign(literals.iterator().next(), null);
+            if (propagate() != null)
+                isUnsatisfiable = true;
+        } else {
+            attach(literals.stream().mapToInt(Integer::intValue).toArray());
+            numberOfClauses++;
+        }
+    }
+
+    private void attach(int[] clause) {
+        watches.get(clause[0]).add(clause);
+        watches.get(clause[1]).add(clause);
+    }
+
+    private int getLevel() {
+        return trailLimits.size();
+    }
+
+    private void assign(int literal, int[] reason) {
+        int variable = getVariable(literal);
+        values[variable] = (literal & 1) == 0 ? TRUE : FALSE;
+        levels[variable] = getLevel();
+        reasons[variable] = reason;
+        trail[trailSize++] = literal;
+    }
+
+    private void backtrack(int level) {
+        if (getLevel() <= level)
+            return;
+        int limit = trailLimits.get(level);
+        for (int i = trailSize - 1; i >= limit; i--) {
+            int variable = getVariable(trail[i]);
+            phases[variable] = values[variable] == TRUE;
+            values[variable] = UNASSIGNED;
+            reasons[variable] = null;
+            heap.insert(variable);
+        }
+        trailSize = propagationHead = limit;
+        trailLimits.subList(level, trailLimits.size()).clear();
+    }
+
+    /**
+     * @return a conflicting clause, null if there is no conflict
+     */
+    private int[] propagate() {
+        while (propagationHead < trailSize) {
+            int falseLiteral = trail[propagationHead++] ^ 1;
+            List<int[]> watchList = watches.get(falseLiteral);
+            int i = 0, j = 0;
+            try {
+                while (i < watchList.size()) {
+                    int[] clause = watchList.get(i++);
+                    // the false literal is moved to the second position, so the first one may be implied
+                    if (clause[0] == falseLiteral) {
+                        clause[0] = clause[1];
+                        clause[1] = falseLiteral;
+                    }
+                    if (getValue(clause[0]) == TRUE) {
+                        watchList.set(j++, clause);
+                        continue;
+                    }
+                    boolean isWatchMoved = false;
+                    for (int k = 2; k < clause.length; k++)
+                        if (getValue(clause[k]) != FALSE) {
+                            clause[1] = clause[k];
+                            clause[k] = falseLiteral;
+                            watches.get(clause[1]).add(clause);
+                            isWatchMoved = true;
+                            break;
+                        }
+                    if (isWatchMoved)
+                        continue;
+                    watchList.set(j++, clause);
+                    if (getValue(clause[0]) == FALSE) {
+                        while (i < watchList.size())
+                            watchList.set(j++, watchList.get(i++));
+                        propagationHead = trailSize;
+                        return clause;
+                    }
+                    assign(clause[0], clause);
+                }
+            } finally {
+                watchList.subList(j, watchList.size()).clear();
+            }
+        }
+        return null;
+    }
+
+    private void bumpVariable(int variable) {
+        if ((activities[variable] += variableIncrement) > RESCALE_LIMIT) {
+            for (int otherVariable = 1; otherVariable <= numberOfVariables; otherVariable++)
+                activities[otherVariable] /= RESCALE_LIMIT;
+            variableIncrement /= RESCALE_LIMIT;
+        }
+        heap.update(variable);
+    }
+
+    private void bumpClause(int[] clause) {
+        Double activity = learnedClauses.get(clause);
+        if (activity == null)
+            return;
+        learnedClauses.put(clause, activity + clauseIncrement);
+        if (activity + clauseIncrement > RESCALE_LIMIT) {
+            learnedClauses.replaceAll((_clause, _activity) -> _activity / RESCALE_LIMIT);
+            clauseIncrement /= RESCALE_LIMIT;
+        }
+    }
+
+    /**
+     * Learns a clause from a conflict (first unique implication point), whose first literal is asserted after
+     * backtracking to the level of its second literal.
+     */
+    private int[] analyze(int[] conflict) {
+        List<Integer> learned = new ArrayList<>();
+        learned.add(0);
+        int pathCount = 0, literal = -1, index = trailSize - 1;
+        int[] clause = conflict;
+        do {
+            bumpClause(clause);
+            for (int k = literal == -1 ? 0 : 1; k < clause.length; k++) {
+                int variable = getVariable(clause[k]);
+                if (!seen[variable] && levels[variable] > 0) {
+                    seen[variable] = true;
+                    bumpVariable(variable);
+                    if (levels[variable] >= getLevel())
+                        pathCount++;
+                    else
+                        learned.add(clause[k]);
+                }
+            }
+            while (!seen[getVariable(trail[index])])
+                index--;
+            literal = trail[index--];
+            clause = reasons[getVariable(literal)];
+            seen[getVariable(literal)] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learned.set(0, literal ^ 1);
+
+        int[] learnedClause = learned.stream().mapToInt(Integer::intValue).toArray();
+        for (int k = 1; k < learnedClause.length; k++)
+            seen[getVariable(learnedClause[k])] = false;
+        // the literal with the highest level is watched, so the clause becomes unit right after backtracking
+        for (int k = 2; k < learnedClause.length; k++)
+            if (levels[getVariable(learnedClause[k])] > levels[getVariable(learnedClause[1])]) {
+                int swap = learnedClause[1];
+                learnedClause[1] = learnedClause[k];
+                learnedClause[k] = swap;
+            }
+        variableIncrement /= VARIABLE_DECAY;
+        clauseIncrement /= CLAUSE_DECAY;
+        return learnedClause;
+    }
+
+    /**
+     * @return the i-th element (from 0) of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, ...
+     */
+    private static int luby(int i) {
+        int size = 1, power = 1;
+        while (size < i + 1) {
+            size = 2 * size + 1;
+            power *= 2;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) / 2;
+            power /= 2;
+            i %= size;
+        }
+        return power;
+    }
+
+    /**
+     * Deletes the half of the learned clauses that took part in conflicts least recently. This must only be called
+     * without any decisions, when no learned clause is the reason for an assignment that conflict analysis looks at.
+     * Binary clauses are kept, as they are cheap and often useful.
+     */
+    private void reduceLearnedClauses() {
+        List<int[]> candidates = new ArrayList<>();
+        learnedClauses.forEach((clause, activity) -> {
+            if (clause.length > 2)
+                candidates.add(clause);
+        });
+        candidates.sort((clause, otherClause) -> Double.compare(learnedClauses.get(clause), learnedClauses.get(otherClause)));
+        Set<int[]> deletedClauses = Collections.newSetFromMap(new IdentityHashMap<>());
+        deletedClauses.addAll(candidates.subList(0, candidates.size() / 2));
+        for (int[] clause : deletedClauses)
+            learnedClauses.remove(clause);
+        for (List<int[]> watchList : watches)
+            watchList.removeIf(deletedClauses::contains);
+        for (int variable = 1; variable <= numberOfVariables; variable++)
+            if (deletedClauses.contains(reasons[variable]))
+                reasons[variable] = null;
+    }
+
+    private void restart() {
+        backtrack(0);
+        restarts++;
+        if (learnedClauses.size() >= maximumLearnedClauses) {
+            reduceLearnedClauses();
+            maximumLearnedClauses += maximumLearnedClauses / 10;
+        }
+    }
+
+    /**
+     * Decides whether the formula is satisfiable under the given assumptions (literals that must be true).
+     * If it is, the found solution is available with {@link #getModel()} afterwards.
+     *
+     * @throws Analyzer.StoppedException if solving is cancelled, learned clauses are kept anyway
+     */
+    boolean solve(int... assumptions) {
+        model = null;
+        if (isUnsatisfiable)
+            return false;
+        backtrack(0);
+        for (int assumption : assumptions)
+            ensureVariables(Math.abs(assumption));
+        if (maximumLearnedClauses == 0)
+            maximumLearnedClauses = Math.max(numberOfClauses / 3, 1000);
+        int conflicts = 0, restartConflicts = RESTART_INTERVAL * luby(restarts);
+        while (true) {
+            int[] conflict = propagate();
+            if (conflict != null) {
+                if (getLevel() == 0) {
+                    isUnsatisfiable = true;
+                    return false;
+                }
+                if (++conflicts % 256 == 0 && isCancelled.getAsBoolean()) {
+                    backtrack(0);
+                    throw new Analyzer.StoppedException();
+                }
+                int[] learnedClause = analyze(conflict);
+                backtrack(learnedClause.length == 1 ? 0 : levels[getVariable(learnedClause[1])]);
+                if (learnedClause.length == 1)
+                    assign(learnedClause[0], null);
+                else {
+                    attach(learnedClause);
+                    learnedClauses.put(learnedClause, clauseIncrement);
+                    assign(learnedClause[0], learnedClause);
+                }
+                if (--restartConflicts == 0) {
+                    restart();
+                    restartConflicts = RESTART_INTERVAL * luby(restarts);
+                }
+                continue;
+            }
+
+            int literal;
+            if (getLevel() < assumptions.length) {
+                literal = toLiteral(assumptions[getLevel()]);
+                if (getValue(literal) == FALSE) {
+                    backtrack(0);
+                    return false;
+                }
+                trailLimits.add(trailSize);
+                if (getValue(literal) == TRUE)
+                    continue;
+            } else {
+                int variable = 0;
+                while (!heap.isEmpty() && values[variable = heap.removeFirst()] != UNASSIGNED)
+                    variable = 0;
+                if (variable == 0) {
+                    model = new boolean[numberOfVariables + 1];
+                    for (variable = 1; variable <= numberOfVariables; variable++)
+                        model[variable] = values[variable] == TRUE;
+                    backtrack(0);
+                    return true;
+                }
+                literal = 2 * variable + (phases[variable] ? 0 : 1);
+                trailLimits.add(trailSize);
+            }
+            assign(literal, null);
+        }
+    }
+
+    /**
+     * @return the solution found by the last call to {@link #solve(int...)}, indexed by variable
+     */
+    boolean[] getModel() {
+        return model;
+    }
+}
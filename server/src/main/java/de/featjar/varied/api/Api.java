@@ -2,11 +2,15 @@ package de.featjar.varied.api;
 
 import com.google.gson.JsonObject;
 import com.google.gson.annotations.Expose;
+import com.google.gson.stream.JsonWriter;
+import de.featjar.model.FeatureModel;
 import de.featjar.varied.project.Artifact;
 import de.featjar.varied.session.User;
 import org.pmw.tinylog.Logger;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * To add a new kind of message: Add a type below and create a camel-cased inner class
@@ -23,14 +27,22 @@ public class Api {
         ADD_ARTIFACT,
         REMOVE_ARTIFACT,
         EXPORT_ARTIFACT,
+        EXPORT_ARTIFACT_CANCEL,
         USER_JOINED,
         USER_LEFT,
         SET_USER_PROFILE,
         JOIN_REQUEST,
         LEAVE_REQUEST,
         ARTIFACT_DATA,
+        ARTIFACT_DATA_PATCH,
+        ARTIFACT_DATA_REQUEST,
         OPERATION_FEATURE_CREATE_BELOW,
-        OPERATION_FEATURE_REMOVE
+        OPERATION_FEATURE_REMOVE,
+        OPERATION_BATCH,
+        ANALYSIS_VOID_MODEL,
+        ANALYSIS_DEAD_FEATURES,
+        ANALYSIS_CORE_FEATURES,
+        ANALYSIS_FALSE_OPTIONAL_FEATURES
     }
 
     public static class Error extends Message implements Message.IEncodable {
@@ -81,6 +93,11 @@ public class Api {
         }
     }
 
+    public static class ExportArtifactCancel extends Message implements Message.IDecodable {
+        @Expose
+        public String format;
+    }
+
     public static class UserJoined extends Message implements Message.IEncodable {
         @Expose
         User user;
@@ -112,16 +129,46 @@ public class Api {
     public static class LeaveRequest extends Message implements Message.IDecodable {
     }
 
-    public static class ArtifactData extends Message implements Message.IEncodable {
+    public static class ArtifactData extends Message implements Message.IStreamEncodable {
         @Expose
-        JsonObject payload;
+        long version;
 
-        public ArtifactData(Artifact.Path artifactPath, JsonObject payload) {
+        // streamed as payload, as it may be large
+        FeatureModel featureModel;
+
+        public ArtifactData(Artifact.Path artifactPath, long version, FeatureModel featureModel) {
             super(TypeEnum.ARTIFACT_DATA, artifactPath);
+            this.version = version;
+            this.featureModel = featureModel;
+        }
+
+        public void encode(JsonWriter jsonWriter) throws IOException {
+            jsonWriter.name("payload");
+            Payload.writeFeatureModel(jsonWriter, featureModel);
+        }
+    }
+
+    /**
+     * Changes an artifact's data from the previous version to the given version.
+     * Clients that miss a version should send an artifact data request to receive the full artifact data again.
+     */
+    public static class ArtifactDataPatch extends Message implements Message.IEncodable {
+        @Expose
+        long version;
+
+        @Expose
+        JsonObject payload;
+
+        public ArtifactDataPatch(Artifact.Path artifactPath, long version, JsonObject payload) {
+            super(TypeEnum.ARTIFACT_DATA_PATCH, artifactPath);
+            this.version = version;
             this.payload = payload;
         }
     }
 
+    public static class ArtifactDataRequest extends Message implements Message.IDecodable {
+    }
+
     public static class OperationFeatureCreateBelow extends Message implements Message.IDecodable {
         @Expose
         public String featureParentID;
@@ -131,4 +178,86 @@ public class Api {
         @Expose
         public String[] featureIDs;
     }
+
+    /**
+     * An ordered list of operations that is applied atomically and broadcast once.
+     */
+    public static class OperationBatch extends Message implements Message.IDecodable {
+        @Expose
+        public Message[] operations;
+    }
+
+    /**
+     * Asks whether the feature model has no valid configuration.
+     * It is answered for the given version of the artifact data, that is, after all previous operations.
+     */
+    public static class AnalysisVoidModel extends Message implements Message.IEncodable, Message.IDecodable {
+        @Expose
+        long version;
+
+        @Expose
+        Boolean isVoid;
+
+        public AnalysisVoidModel(Artifact.Path artifactPath, long version, boolean isVoid) {
+            super(TypeEnum.ANALYSIS_VOID_MODEL, artifactPath);
+            this.version = version;
+            this.isVoid = isVoid;
+        }
+    }
+
+    /**
+     * Asks which of the given features (or of all features, if none are given) have some property.
+     * It is answered with the same features and those that have the property, for the given version of the
+     * artifact data.
+     */
+    public abstract static class FeatureAnalysis extends Message implements Message.IEncodable, Message.IDecodable {
+        @Expose
+        public String[] featureIDs;
+
+        @Expose
+        long version;
+
+        @Expose
+        String[] result;
+
+        FeatureAnalysis() {
+        }
+
+        FeatureAnalysis(TypeEnum typeEnum, Artifact.Path artifactPath, String[] featureIDs, long version, List<String> result) {
+            super(typeEnum, artifactPath);
+            this.featureIDs = featureIDs;
+            this.version = version;
+            this.result = result.toArray(new String[]{});
+        }
+    }
+
+    public static class AnalysisDeadFeatures extends FeatureAnalysis {
+        AnalysisDeadFeatures() {
+        }
+
+        public AnalysisDeadFeatures(Artifact.Path artifactPath, String[] featureIDs, long version, List<String> result) {
+            super(TypeEnum.ANALYSIS_DEAD_FEATURES, artifactPath, featureIDs, version, result);
+        }
+    }
+
+    public static class AnalysisCoreFeatures extends FeatureAnalysis {
+        AnalysisCoreFeatures() {
+        }
+
+        public AnalysisCoreFeatures(Artifact.Path artifactPath, String[] featureIDs, long version, List<String> result) {
+            super(TypeEnum.ANALYSIS_CORE_FEATURES, artifactPath, featureIDs, version, result);
+        }
+    }
+
+    /**
+     * Optional features that are selected in every valid configuration in which their parent is selected.
+     */
+    public static class AnalysisFalseOptionalFeatures extends FeatureAnalysis {
+        AnalysisFalseOptionalFeatures() {
+        }
+
+        public AnalysisFalseOptionalFeatures(Artifact.Path artifactPath, String[] featureIDs, long version, List<String> result) {
+            super(TypeEnum.ANALYSIS_FALSE_OPTIONAL_FEATURES, artifactPath, featureIDs, version, result);
+        }
+    }
 }
@@ -0,0 +1,252 @@
+package de.featjar.varied.api;
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
+import de.featjar.varied.util.BinaryInput;
+import de.featjar.varied.util.BinaryOutput;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A compact binary encoding of JSON, so that messages are encoded the same way as with JSON, just smaller and faster.
+ * Every value starts with a tag byte. Integers are zigzag-encoded variable-length integers, doubles take eight bytes.
+ * Arrays and objects are terminated with {@link #END}, object members are encoded as name and value.
+ * Every string (including names) is written only once per message: after its first occurrence, it is referred to
+ * by its index in the message's string table, so that property names and feature IDs are not repeated.
+ */
+class BinaryJson {
+    static final int NULL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int INTEGER = 3;
+    static final int DOUBLE = 4;
+    static final int STRING = 5;
+    static final int STRING_REFERENCE = 6;
+    static final int BEGIN_ARRAY = 7;
+    static final int BEGIN_OBJECT = 8;
+    static final int END = 9;
+
+    /**
+     * Writes the binary encoding instead of JSON, so messages can be encoded with GSON and stream encoders as usual.
+     */
+    static class BinaryJsonWriter extends JsonWriter {
+        private static final Writer UNUSED_WRITER = new Writer() {
+            public void write(char[] buffer, int offset, int length) {
+                throw new UnsupportedOperationException();
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+
+        private final BinaryOutput binaryOutput = new BinaryOutput();
+        private final Map<String, Integer> stringTable = new HashMap<>();
+        private String deferredName;
+
+        BinaryJsonWriter() {
+            super(UNUSED_WRITER);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return binaryOutput.toByteBuffer();
+        }
+
+        private void writeString(String value) {
+            Integer index = stringTable.get(value);
+            if (index != null)
+                binaryOutput.writeByte(STRING_REFERENCE).writeVarInt(index);
+            else {
+                stringTable.put(value, stringTable.size());
+                binaryOutput.writeByte(STRING).writeString(value);
+            }
+        }
+
+        // names are written together with their value, so that null members can be omitted like in JSON
+        private BinaryJsonWriter writeValue(int tag) {
+            if (deferredName != null) {
+                writeString(deferredName);
+                deferredName = null;
+            }
+            binaryOutput.writeByte(tag);
+            return this;
+        }
+
+        public JsonWriter beginArray() {
+            return writeValue(BEGIN_ARRAY);
+        }
+
+        public JsonWriter endArray() {
+            binaryOutput.writeByte(END);
+            return this;
+        }
+
+        public JsonWriter beginObject() {
+            return writeValue(BEGIN_OBJECT);
+        }
+
+        public JsonWriter endObject() {
+            binaryOutput.writeByte(END);
+            return this;
+        }
+
+        public JsonWriter name(String name) {
+            Objects.requireNonNull(name, "name == null");
+            if (deferredName != null)
+                throw new IllegalStateException("name already given");
+            deferredName = name;
+            return this;
+        }
+
+        public JsonWriter value(String value) {
+            if (value == null)
+                return nullValue();
+            if (deferredName != null) {
+                writeString(deferredName);
+                deferredName = null;
+            }
+            writeString(value);
+            return this;
+        }
+
+        public JsonWriter jsonValue(String value) {
+            if (value == null)
+                return nullValue();
+            write(JsonParser.parseString(value));
+            return this;
+        }
+
+        private void write(JsonElement element) {
+            if (element.isJsonNull())
+                nullValue();
+            else if (element.isJsonArray()) {
+                beginArray();
+                element.getAsJsonArray().forEach(this::write);
+                endArray();
+            } else if (element.isJsonObject()) {
+                beginObject();
+                for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                    name(entry.getKey());
+                    write(entry.getValue());
+                }
+                endObject();
+            } else {
+                JsonPrimitive primitive = element.getAsJsonPrimitive();
+                if (primitive.isBoolean())
+                    value(primitive.getAsBoolean());
+                else if (primitive.isNumber())
+                    value(primitive.getAsNumber());
+                else
+                    value(primitive.getAsString());
+            }
+        }
+
+        public JsonWriter nullValue() {
+            if (deferredName != null && !getSerializeNulls()) {
+                deferredName = null;
+                return this;
+            }
+            return writeValue(NULL);
+        }
+
+        public JsonWriter value(boolean value) {
+            return writeValue(value ? TRUE : FALSE);
+        }
+
+        public JsonWriter value(Boolean value) {
+            return value == null ? nullValue() : value(value.booleanValue());
+        }
+
+        public JsonWriter value(double value) {
+            writeValue(DOUBLE).binaryOutput.writeDouble(value);
+            return this;
+        }
+
+        public JsonWriter value(long value) {
+            writeValue(INTEGER).binaryOutput.writeVarLong(value);
+            return this;
+        }
+
+        public JsonWriter value(Number value) {
+            if (value == null)
+                return nullValue();
+            if (value instanceof Double || value instanceof Float || value instanceof BigDecimal)
+                return value(value.doubleValue());
+            // other numbers (e.g., parsed from JSON) are written as integers if they are integral
+            double doubleValue = value.doubleValue();
+            return doubleValue == Math.rint(doubleValue) && Math.abs(doubleValue) < 0x1p53
+                    ? value(value.longValue())
+                    : value(doubleValue);
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+
+    /**
+     * Reads a message's binary encoding into a JSON tree, which can then be decoded with GSON as usual.
+     */
+    static JsonElement read(ByteBuffer buffer) {
+        BinaryInput binaryInput = new BinaryInput(buffer);
+        JsonElement element = read(binaryInput, binaryInput.readByte(), new ArrayList<>());
+        if (binaryInput.hasRemaining())
+            throw new JsonParseException("unexpected data after binary message");
+        return element;
+    }
+
+    private static JsonElement read(BinaryInput binaryInput, int tag, List<String> stringTable) {
+        switch (tag) {
+            case NULL:
+                return JsonNull.INSTANCE;
+            case FALSE:
+                return new JsonPrimitive(false);
+            case TRUE:
+                return new JsonPrimitive(true);
+            case INTEGER:
+                return new JsonPrimitive(binaryInput.readVarLong());
+            case DOUBLE:
+                return new JsonPrimitive(binaryInput.readDouble());
+            case STRING:
+            case STRING_REFERENCE:
+                return new JsonPrimitive(readString(binaryInput, tag, stringTable));
+            case BEGIN_ARRAY:
+                JsonArray array = new JsonArray();
+                for (int elementTag; (elementTag = binaryInput.readByte()) != END; )
+                    array.add(read(binaryInput, elementTag, stringTable));
+                return array;
+            case BEGIN_OBJECT:
+                JsonObject object = new JsonObject();
+                for (int nameTag; (nameTag = binaryInput.readByte()) != END; ) {
+                    String name = readString(binaryInput, nameTag, stringTable);
+                    object.add(name, read(binaryInput, binaryInput.readByte(), stringTable));
+                }
+                return object;
+            default:
+                throw new JsonParseException("invalid tag " + tag + " in binary message");
+        }
+    }
+
+    private static String readString(BinaryInput binaryInput, int tag, List<String> stringTable) {
+        if (tag == STRING) {
+            String value = binaryInput.readString();
+            stringTable.add(value);
+            return value;
+        }
+        if (tag == STRING_REFERENCE) {
+            int index = binaryInput.readVarInt();
+            if (index >= stringTable.size())
+                throw new JsonParseException("invalid string reference " + index + " in binary message");
+            return stringTable.get(index);
+        }
+        throw new JsonParseException("expected string in binary message, got tag " + tag);
+    }
+}
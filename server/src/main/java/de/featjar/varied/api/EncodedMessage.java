@@ -0,0 +1,73 @@
+package de.featjar.varied.api;
+
+import de.featjar.varied.metrics.Family;
+import de.featjar.varied.metrics.Histogram;
+import de.featjar.varied.metrics.Metrics;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A message that is encoded once and can then be sent to any number of users.
+ * This way, broadcasting a message does not serialize it again for every recipient.
+ * The message is encoded right away (as it may refer to mutable state) in every format some recipient uses.
+ * If a recipient with another format shows up later, that encoding is converted from an existing one.
+ */
+public class EncodedMessage {
+    private static final Family<Histogram> ENCODE_TIME = Metrics.histogram("varied_encode_seconds", "time for encoding messages to send", "type");
+    private static final Map<Format, AtomicInteger> recipients = new EnumMap<>(Format.class);
+
+    public enum Format {TEXT, BINARY}
+
+    static {
+        for (Format format : Format.values())
+            recipients.put(format, new AtomicInteger());
+    }
+
+    private final Message message;
+    private String text;
+    private ByteBuffer binary;
+
+    public EncodedMessage(Message.IEncodable message) {
+        long startTime = System.nanoTime();
+        this.message = (Message) message;
+        if (recipients.get(Format.TEXT).get() > 0 || recipients.get(Format.BINARY).get() == 0)
+            text = new MessageSerializer.MessageEncoder().encode(this.message);
+        if (recipients.get(Format.BINARY).get() > 0)
+            binary = new MessageSerializer.BinaryMessageEncoder().encode(this.message);
+        ENCODE_TIME.get(this.message.getType()).recordSince(startTime);
+    }
+
+    public static void addRecipient(Format format) {
+        recipients.get(format).incrementAndGet();
+    }
+
+    public static void removeRecipient(Format format) {
+        recipients.get(format).decrementAndGet();
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public synchronized String getText() {
+        if (text == null)
+            text = MessageSerializer.convertToText(binary.duplicate());
+        return text;
+    }
+
+    /**
+     * @return a buffer with the binary encoding, which may be consumed by the caller
+     */
+    public synchronized ByteBuffer getBinary() {
+        if (binary == null)
+            binary = MessageSerializer.convertToBinary(text);
+        return binary.duplicate();
+    }
+
+    public String toString() {
+        return getText();
+    }
+}
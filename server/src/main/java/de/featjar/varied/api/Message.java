@@ -1,10 +1,12 @@
 package de.featjar.varied.api;
 
 import com.google.gson.annotations.Expose;
+import com.google.gson.stream.JsonWriter;
 import com.google.gson.typeadapters.RuntimeTypeAdapterFactory;
 import de.featjar.varied.util.Strings;
 import de.featjar.varied.project.Artifact;
 
+import java.io.IOException;
 import java.util.stream.Stream;
 
 /**
@@ -88,6 +90,11 @@ abstract public class Message {
     public interface IEncodable {
     }
 
+    // may be sent by the server, writes (large) parts of itself directly to the output without building a JSON tree
+    public interface IStreamEncodable extends IEncodable {
+        void encode(JsonWriter jsonWriter) throws IOException;
+    }
+
     // may be received by the server
     public interface IDecodable {
     }
@@ -2,12 +2,21 @@ package de.featjar.varied.api;
 
 import com.google.gson.*;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import com.google.gson.typeadapters.RuntimeTypeAdapterFactory;
+import de.featjar.varied.metrics.Counter;
+import de.featjar.varied.metrics.Histogram;
+import de.featjar.varied.metrics.Metrics;
 
 import javax.websocket.Decoder;
 import javax.websocket.Encoder;
 import javax.websocket.EndpointConfig;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Map;
 
 /**
  * Utilities for serializing messages.
@@ -19,6 +28,9 @@ public class MessageSerializer {
     private static final RuntimeTypeAdapterFactory<Message> runtimeTypeAdapterFactory =
             Message.Type.registerSubtypes(RuntimeTypeAdapterFactory.of(Message.class, "type", true));
 
+    private static final Histogram DECODE_TIME = Metrics.histogram("varied_decode_seconds", "time for decoding received messages");
+    private static final Counter RECEIVED_BYTES = Metrics.counter("varied_received_bytes_total", "size of received messages (in bytes, or characters for JSON, which mostly is ASCII)");
+
     /**
      * type hint for GSON
      */
@@ -39,7 +51,53 @@ public class MessageSerializer {
      */
     public static class MessageEncoder implements Encoder.Text<Message> {
         public String encode(Message message) {
-            return gson.toJson(message);
+            StringWriter writer = new StringWriter();
+            try {
+                encode(message, writer);
+            } catch (IOException e) {
+                throw new JsonIOException(e);
+            }
+            return writer.toString();
+        }
+
+        public void encode(Message message, Writer writer) throws IOException {
+            MessageSerializer.encode(message, gson.newJsonWriter(writer));
+        }
+
+        public void init(EndpointConfig endpointConfig) {
+        }
+
+        public void destroy() {
+        }
+    }
+
+    private static void encode(Message message, JsonWriter jsonWriter) throws IOException {
+        if (message instanceof Message.IStreamEncodable) {
+            // exposed fields are small, so we only stream the rest without building a JSON tree
+            jsonWriter.beginObject();
+            for (Map.Entry<String, JsonElement> entry : gson.toJsonTree(message).getAsJsonObject().entrySet()) {
+                jsonWriter.name(entry.getKey());
+                gson.toJson(entry.getValue(), jsonWriter);
+            }
+            ((Message.IStreamEncodable) message).encode(jsonWriter);
+            jsonWriter.endObject();
+        } else
+            gson.toJson(message, message.getClass(), jsonWriter);
+        jsonWriter.flush();
+    }
+
+    /**
+     * encodes messages with the binary encoding of JSON (see {@link BinaryJson}), for clients that negotiated it
+     */
+    public static class BinaryMessageEncoder implements Encoder.Binary<Message> {
+        public ByteBuffer encode(Message message) {
+            BinaryJson.BinaryJsonWriter binaryJsonWriter = new BinaryJson.BinaryJsonWriter();
+            try {
+                MessageSerializer.encode(message, binaryJsonWriter);
+            } catch (IOException e) {
+                throw new JsonIOException(e);
+            }
+            return binaryJsonWriter.toByteBuffer();
         }
 
         public void init(EndpointConfig endpointConfig) {
@@ -49,12 +107,26 @@ public class MessageSerializer {
         }
     }
 
+    static String convertToText(ByteBuffer binary) {
+        return gson.toJson(BinaryJson.read(binary));
+    }
+
+    static ByteBuffer convertToBinary(String text) {
+        BinaryJson.BinaryJsonWriter binaryJsonWriter = new BinaryJson.BinaryJsonWriter();
+        gson.toJson(JsonParser.parseString(text), binaryJsonWriter);
+        return binaryJsonWriter.toByteBuffer();
+    }
+
     /**
      * decodes message objects from JSON (respecting the polymorphic class hierarchy)
      */
     public static class MessageDecoder implements Decoder.Text<Message> {
         public Message decode(String s) {
-            return gson.fromJson(s, typeToken.getType());
+            long startTime = System.nanoTime();
+            Message message = gson.fromJson(s, typeToken.getType());
+            DECODE_TIME.recordSince(startTime);
+            RECEIVED_BYTES.add(s.length());
+            return message;
         }
 
         public boolean willDecode(String s) {
@@ -68,6 +140,30 @@ public class MessageSerializer {
         }
     }
 
+    /**
+     * decodes message objects from the binary encoding of JSON (see {@link BinaryJson})
+     */
+    public static class BinaryMessageDecoder implements Decoder.Binary<Message> {
+        public Message decode(ByteBuffer buffer) {
+            long startTime = System.nanoTime();
+            int size = buffer.remaining();
+            Message message = gson.fromJson(BinaryJson.read(buffer), typeToken.getType());
+            DECODE_TIME.recordSince(startTime);
+            RECEIVED_BYTES.add(size);
+            return message;
+        }
+
+        public boolean willDecode(ByteBuffer buffer) {
+            return buffer != null;
+        }
+
+        public void init(EndpointConfig endpointConfig) {
+        }
+
+        public void destroy() {
+        }
+    }
+
     private static class MessageTypeTypeAdapter implements JsonSerializer<Message.Type>, JsonDeserializer<Message.Type> {
         public JsonElement serialize(Message.Type src, Type typeOfSrc, JsonSerializationContext context) {
             return new JsonPrimitive(src.toString());
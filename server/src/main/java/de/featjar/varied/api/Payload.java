@@ -1,30 +1,234 @@
 package de.featjar.varied.api;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 import de.featjar.formula.structure.Formula;
 import de.featjar.formula.structure.atomic.literal.BooleanLiteral;
 import de.featjar.formula.structure.compound.*;
+import de.featjar.model.Constraint;
 import de.featjar.model.Feature;
 import de.featjar.model.FeatureModel;
 import de.featjar.model.FeatureTree;
 
+import java.io.IOException;
+import java.util.*;
+
 public class Payload {
-    public static JsonObject fromFeatureModel(FeatureModel featureModel) {
-        JsonObject root = new JsonObject();
-        root.add("featureTree", fromFeatureTree(featureModel.getFeatureTree()));
-        JsonArray constraints = new JsonArray();
-        featureModel.getConstraints().forEach(constraint -> {
-            JsonObject o = new JsonObject();
-            o.addProperty("id", constraint.getIdentifier().toString());
-            o.add("formula", fromFormula(constraint.getFormula()));
-            constraints.add(o);
+    private static final Gson gson = new Gson();
+
+    /**
+     * Writes a feature model's payload without building an intermediate JSON tree,
+     * so that large feature models do not have to be held in memory twice.
+     */
+    public static void writeFeatureModel(JsonWriter jsonWriter, FeatureModel featureModel) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("featureTree");
+        writeFeatureTree(jsonWriter, featureModel.getFeatureTree());
+        jsonWriter.name("constraints");
+        jsonWriter.beginArray();
+        for (Constraint constraint : featureModel.getConstraints())
+            gson.toJson(fromConstraint(constraint), jsonWriter);
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+    }
+
+    private static void writeFeatureTree(JsonWriter jsonWriter, FeatureTree featureTree) throws IOException {
+        jsonWriter.beginObject();
+        for (Map.Entry<String, JsonElement> entry : fromFeature(featureTree).entrySet()) {
+            jsonWriter.name(entry.getKey());
+            gson.toJson(entry.getValue(), jsonWriter);
+        }
+        jsonWriter.name("children");
+        jsonWriter.beginArray();
+        for (FeatureTree child : featureTree.getChildren())
+            writeFeatureTree(jsonWriter, child);
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+    }
+
+    /**
+     * Flat representation of a feature model's structure, which allows to compute patches between two versions.
+     * Only the features' children are stored, not their encoded form, so the index takes little memory.
+     * Constraints are stored in encoded form, as they can not tell whether they changed otherwise.
+     */
+    public static class Index {
+        private final Map<String, List<String>> childrenIDs = new HashMap<>();
+        private final Map<String, Integer> encodedLengths = new HashMap<>();
+        private final Map<String, String> constraints = new LinkedHashMap<>();
+        private List<Constraint> sourceConstraints = List.of();
+        private long encodedLength;
+
+        /**
+         * @return the number of characters in all encoded features and constraints
+         */
+        public long getEncodedLength() {
+            return encodedLength;
+        }
+
+        private void putFeature(FeatureTree featureTree, String encodedFeature) {
+            String id = featureTree.getFeature().getIdentifier().toString();
+            Integer oldLength = encodedLengths.put(id, encodedFeature.length());
+            encodedLength += encodedFeature.length() - (oldLength != null ? oldLength : 0);
+            List<String> children = new ArrayList<>(featureTree.getChildren().size());
+            featureTree.getChildren().forEach(child -> children.add(child.getFeature().getIdentifier().toString()));
+            childrenIDs.put(id, children);
+        }
+
+        /**
+         * Removes a feature and its descendants, except for those that are still in the feature tree (e.g., children
+         * that were moved up to the removed feature's parent), which are kept with their subtrees.
+         */
+        private void removeFeature(String id, JsonArray removed, Set<String> presentIDs) {
+            if (presentIDs.contains(id))
+                return;
+            removed.add(id);
+            Integer oldLength = encodedLengths.remove(id);
+            encodedLength -= oldLength != null ? oldLength : 0;
+            List<String> children = childrenIDs.remove(id);
+            if (children != null)
+                children.forEach(child -> removeFeature(child, removed, presentIDs));
+        }
+
+        private Map<String, String> putConstraints(List<Constraint> constraints) {
+            Map<String, String> oldConstraints = new LinkedHashMap<>(this.constraints);
+            this.constraints.clear();
+            constraints.forEach(constraint ->
+                    this.constraints.put(constraint.getIdentifier().toString(), gson.toJson(fromConstraint(constraint))));
+            sourceConstraints = List.copyOf(constraints);
+            encodedLength += this.constraints.values().stream().mapToLong(String::length).sum() -
+                    oldConstraints.values().stream().mapToLong(String::length).sum();
+            return oldConstraints;
+        }
+    }
+
+    public static Index toIndex(FeatureModel featureModel) {
+        Index index = new Index();
+        addToIndex(index, featureModel.getFeatureTree(), null);
+        index.putConstraints(featureModel.getConstraints());
+        return index;
+    }
+
+    private static void addToIndex(Index index, FeatureTree featureTree, JsonArray added) {
+        JsonObject o = toPatchedFeature(featureTree);
+        index.putFeature(featureTree, gson.toJson(o));
+        if (added != null)
+            added.add(o);
+        featureTree.getChildren().forEach(child -> addToIndex(index, child, added));
+    }
+
+    private static JsonObject toPatchedFeature(FeatureTree featureTree) {
+        JsonObject o = fromFeature(featureTree);
+        JsonArray childrenIds = new JsonArray();
+        featureTree.getChildren().forEach(child -> childrenIds.add(child.getFeature().getIdentifier().toString()));
+        o.add("childrenIds", childrenIds);
+        return o;
+    }
+
+    /**
+     * Computes the added, changed and removed features and constraints since the index was created or last updated,
+     * and updates the index accordingly. Only the given changed features and their children are visited, so the
+     * patch's size and the time to compute it depend on the size of the change, not on the size of the feature model.
+     *
+     * @param changedFeatures features whose attributes, parent or children changed since the index was last updated,
+     *                        including features that have been removed since
+     */
+    public static JsonObject updateIndex(Index index, FeatureModel featureModel, Collection<Feature> changedFeatures) {
+        JsonArray added = new JsonArray(), changed = new JsonArray(), removed = new JsonArray();
+        FeatureTree root = featureModel.getFeatureTree();
+        Set<String> addedIDs = new HashSet<>();
+        // every feature that moved is a child of a changed feature, so these are all features that may have moved
+        Set<String> presentIDs = new HashSet<>();
+        for (Feature feature : changedFeatures)
+            if (isInFeatureTree(feature.getFeatureTree(), root))
+                feature.getFeatureTree().getChildren()
+                        .forEach(child -> presentIDs.add(child.getFeature().getIdentifier().toString()));
+        for (Feature feature : changedFeatures) {
+            FeatureTree featureTree = feature.getFeatureTree();
+            String id = feature.getIdentifier().toString();
+            // removed features are removed from the index with the subtree of their (changed) former parent
+            if (!isInFeatureTree(featureTree, root) || addedIDs.contains(id))
+                continue;
+            if (!index.childrenIDs.containsKey(id)) {
+                addSubtree(index, featureTree, added, addedIDs);
+                continue;
+            }
+            for (FeatureTree child : featureTree.getChildren())
+                if (!index.childrenIDs.containsKey(child.getFeature().getIdentifier().toString()))
+                    addSubtree(index, child, added, addedIDs);
+            for (String oldChildID : index.childrenIDs.get(id))
+                index.removeFeature(oldChildID, removed, presentIDs);
+            JsonObject o = toPatchedFeature(featureTree);
+            index.putFeature(featureTree, gson.toJson(o));
+            changed.add(o);
+        }
+
+        JsonObject patch = new JsonObject();
+        patch.add("addedFeatures", added);
+        patch.add("changedFeatures", changed);
+        patch.add("removedFeatureIDs", removed);
+        // constraints are only compared if any of them changed, which operations on features do not do
+        List<Constraint> constraints = featureModel.getConstraints();
+        if (isSameList(index.sourceConstraints, constraints)) {
+            patch.add("addedConstraints", new JsonArray());
+            patch.add("changedConstraints", new JsonArray());
+            patch.add("removedConstraintIDs", new JsonArray());
+        } else
+            addToPatch(patch, index.putConstraints(constraints), index.constraints, "Constraints", "removedConstraintIDs");
+        return patch;
+    }
+
+    private static void addSubtree(Index index, FeatureTree featureTree, JsonArray added, Set<String> addedIDs) {
+        int size = added.size();
+        addToIndex(index, featureTree, added);
+        for (int i = size; i < added.size(); i++)
+            addedIDs.add(added.get(i).getAsJsonObject().get("id").getAsString());
+    }
+
+    private static boolean isInFeatureTree(FeatureTree featureTree, FeatureTree root) {
+        while (featureTree.getParent().isPresent())
+            featureTree = featureTree.getParent().get();
+        return featureTree == root;
+    }
+
+    private static boolean isSameList(List<?> list, List<?> otherList) {
+        if (list.size() != otherList.size())
+            return false;
+        for (int i = 0; i < list.size(); i++)
+            if (list.get(i) != otherList.get(i))
+                return false;
+        return true;
+    }
+
+    private static void addToPatch(JsonObject patch, Map<String, String> oldMap, Map<String, String> newMap,
+                                   String suffix, String removedKey) {
+        JsonArray added = new JsonArray(), changed = new JsonArray(), removed = new JsonArray();
+        newMap.forEach((id, newValue) -> {
+            String oldValue = oldMap.get(id);
+            if (oldValue == null)
+                added.add(JsonParser.parseString(newValue));
+            else if (!oldValue.equals(newValue))
+                changed.add(JsonParser.parseString(newValue));
         });
-        root.add("constraints", constraints);
-        return root;
+        oldMap.keySet().stream()
+                .filter(id -> !newMap.containsKey(id))
+                .forEach(removed::add);
+        patch.add("added" + suffix, added);
+        patch.add("changed" + suffix, changed);
+        patch.add(removedKey, removed);
+    }
+
+    private static JsonObject fromConstraint(Constraint constraint) {
+        JsonObject o = new JsonObject();
+        o.addProperty("id", constraint.getIdentifier().toString());
+        o.add("formula", fromFormula(constraint.getFormula()));
+        return o;
     }
 
-    private static JsonObject fromFeatureTree(FeatureTree featureTree) {
+    private static JsonObject fromFeature(FeatureTree featureTree) {
         Feature feature = featureTree.getFeature();
         JsonObject o = new JsonObject();
         o.addProperty("id", feature.getIdentifier().toString());
@@ -39,9 +243,6 @@ public class Payload {
         o.addProperty("isOr", featureTree.isOr());
         o.addProperty("isAlternative", featureTree.isAlternative());
         o.addProperty("isGroup", featureTree.isGroup());
-        JsonArray c = new JsonArray();
-        featureTree.getChildren().stream().map(Payload::fromFeatureTree).forEach(c::add);
-        o.add("children", c);
         return o;
     }
 
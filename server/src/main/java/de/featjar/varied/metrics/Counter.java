@@ -0,0 +1,40 @@
+package de.featjar.varied.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count, which can be increased concurrently without contention.
+ */
+public class Counter implements Metric {
+    private final String name, help;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    public String getType() {
+        return "counter";
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long value) {
+        count.add(value);
+    }
+
+    public void write(StringBuilder builder, String labels) {
+        builder.append(name).append(Metrics.formatLabels(labels)).append(' ').append(count.sum()).append('\n');
+    }
+}
@@ -0,0 +1,35 @@
+package de.featjar.varied.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * Metrics of the same name that are distinguished by the value of one label (e.g., the message type).
+ */
+public class Family<T extends Metric> {
+    private final String name, help, labelName;
+    private final Function<String, T> constructor;
+    private final Map<String, T> children = new ConcurrentSkipListMap<>();
+
+    Family(String name, String help, String labelName, Function<String, T> constructor) {
+        this.name = name;
+        this.help = help;
+        this.labelName = labelName;
+        this.constructor = constructor;
+    }
+
+    public T get(Object labelValue) {
+        return children.computeIfAbsent(String.valueOf(labelValue), _labelValue -> constructor.apply(name));
+    }
+
+    void write(StringBuilder builder) {
+        if (children.isEmpty())
+            return;
+        Metric first = children.values().iterator().next();
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(first.getType()).append('\n');
+        children.forEach((labelValue, metric) ->
+                metric.write(builder, labelName + "=\"" + Metrics.escape(labelValue) + "\""));
+    }
+}
@@ -0,0 +1,33 @@
+package de.featjar.varied.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * A value that is determined when the metrics are scraped (e.g., the size of a queue).
+ */
+public class Gauge implements Metric {
+    private final String name, help;
+    private final Supplier<? extends Number> supplier;
+
+    Gauge(String name, String help, Supplier<? extends Number> supplier) {
+        this.name = name;
+        this.help = help;
+        this.supplier = supplier;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    public String getType() {
+        return "gauge";
+    }
+
+    public void write(StringBuilder builder, String labels) {
+        builder.append(name).append(Metrics.formatLabels(labels)).append(' ').append(supplier.get()).append('\n');
+    }
+}
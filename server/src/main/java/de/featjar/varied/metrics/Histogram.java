@@ -0,0 +1,68 @@
+package de.featjar.varied.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations in exponentially growing buckets (from 10 microseconds to about 20 seconds).
+ * Recording a duration only increments two counters, so it can be done on hot paths without contention.
+ */
+public class Histogram implements Metric {
+    private static final int BUCKETS = 22;
+    private static final long[] UPPER_BOUNDS = new long[BUCKETS];
+
+    static {
+        for (int i = 0; i < BUCKETS; i++)
+            UPPER_BOUNDS[i] = 10_000L << i;
+    }
+
+    private final String name, help;
+    private final LongAdder[] counts = new LongAdder[BUCKETS + 1];
+    private final LongAdder sum = new LongAdder();
+
+    Histogram(String name, String help) {
+        this.name = name;
+        this.help = help;
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = new LongAdder();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    public String getType() {
+        return "histogram";
+    }
+
+    public void record(long nanoseconds) {
+        int bucket = 0;
+        while (bucket < BUCKETS && nanoseconds > UPPER_BOUNDS[bucket])
+            bucket++;
+        counts[bucket].increment();
+        sum.add(nanoseconds);
+    }
+
+    /**
+     * Records the time since the given start time, as returned by {@link System#nanoTime()}.
+     */
+    public void recordSince(long startTime) {
+        record(System.nanoTime() - startTime);
+    }
+
+    public void write(StringBuilder builder, String labels) {
+        String separator = labels.isEmpty() ? "" : ",";
+        long count = 0;
+        for (int i = 0; i <= BUCKETS; i++) {
+            count += counts[i].sum();
+            builder.append(name).append("_bucket{").append(labels).append(separator).append("le=\"")
+                    .append(i < BUCKETS ? Double.toString(UPPER_BOUNDS[i] / 1e9) : "+Inf")
+                    .append("\"} ").append(count).append('\n');
+        }
+        builder.append(name).append("_sum").append(Metrics.formatLabels(labels)).append(' ').append(sum.sum() / 1e9).append('\n');
+        builder.append(name).append("_count").append(Metrics.formatLabels(labels)).append(' ').append(count).append('\n');
+    }
+}
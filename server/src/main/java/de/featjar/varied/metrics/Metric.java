@@ -0,0 +1,19 @@
+package de.featjar.varied.metrics;
+
+/**
+ * A metric that can be written in Prometheus' text exposition format.
+ */
+interface Metric {
+    String getName();
+
+    String getHelp();
+
+    String getType();
+
+    /**
+     * Writes the metric's samples.
+     *
+     * @param labels labels of this metric, formatted as {@code key="value"}, or an empty string
+     */
+    void write(StringBuilder builder, String labels);
+}
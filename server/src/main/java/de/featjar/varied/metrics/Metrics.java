@@ -0,0 +1,64 @@
+package de.featjar.varied.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the server's metrics, which are exposed in Prometheus' text format (see {@link MetricsServlet}).
+ * Metrics are usually created once in a static field of the class that records them.
+ */
+public class Metrics {
+    private static final List<Metric> metrics = new CopyOnWriteArrayList<>();
+    private static final List<Family<?>> families = new CopyOnWriteArrayList<>();
+
+    private static <T extends Metric> T register(T metric) {
+        metrics.add(metric);
+        return metric;
+    }
+
+    private static <T extends Metric> Family<T> register(Family<T> family) {
+        families.add(family);
+        return family;
+    }
+
+    public static Counter counter(String name, String help) {
+        return register(new Counter(name, help));
+    }
+
+    public static Family<Counter> counter(String name, String help, String labelName) {
+        return register(new Family<>(name, help, labelName, _name -> new Counter(_name, help)));
+    }
+
+    public static Histogram histogram(String name, String help) {
+        return register(new Histogram(name, help));
+    }
+
+    public static Family<Histogram> histogram(String name, String help, String labelName) {
+        return register(new Family<>(name, help, labelName, _name -> new Histogram(_name, help)));
+    }
+
+    public static Gauge gauge(String name, String help, Supplier<? extends Number> supplier) {
+        return register(new Gauge(name, help, supplier));
+    }
+
+    static String formatLabels(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public static String scrape() {
+        StringBuilder builder = new StringBuilder();
+        for (Metric metric : metrics) {
+            builder.append("# HELP ").append(metric.getName()).append(' ').append(metric.getHelp()).append('\n');
+            builder.append("# TYPE ").append(metric.getName()).append(' ').append(metric.getType()).append('\n');
+            metric.write(builder, "");
+        }
+        for (Family<?> family : families)
+            family.write(builder);
+        return builder.toString();
+    }
+}
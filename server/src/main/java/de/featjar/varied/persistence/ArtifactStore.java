@@ -0,0 +1,249 @@
+package de.featjar.varied.persistence;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.featjar.model.FeatureModel;
+import de.featjar.varied.util.FeatureModels;
+import org.pmw.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persists a feature model as its latest snapshot and an append-only log of the operations applied since.
+ * Log records carry increasing sequence numbers and snapshots are named after the last record they include,
+ * so records that are already part of a snapshot are skipped, even if the server crashed while taking it.
+ * Snapshots are stored in the {@link BinarySnapshot} format and memory-mapped when loaded, falling back to XML
+ * for feature models that can not be encoded in binary.
+ */
+public class ArtifactStore {
+    private static final String XML_FORMAT = "XmlFeatureModelFormat";
+    private static final String LOG_FILE_NAME = "operations.log";
+    private static final Pattern SNAPSHOT_FILE_NAME = Pattern.compile("snapshot\\.(\\d+)\\.(bin|xml)");
+
+    private final Path directory;
+    private FileChannel log;
+    private long sequenceNumber;
+    private int recordsSinceSnapshot;
+    private boolean isDirty;
+    // sessions may outlive their store (e.g., when the server is reset), then they must not write anymore
+    private boolean isDeleted;
+
+    ArtifactStore(Path directory) {
+        this.directory = directory;
+    }
+
+    private FileChannel getLog() throws IOException {
+        if (log == null) {
+            Files.createDirectories(directory);
+            log = FileChannel.open(directory.resolve(LOG_FILE_NAME),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            log.position(log.size());
+        }
+        return log;
+    }
+
+    private static long getSequenceNumber(Path snapshot) {
+        Matcher matcher = SNAPSHOT_FILE_NAME.matcher(snapshot.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private List<Path> getSnapshots() throws IOException {
+        if (!Files.isDirectory(directory))
+            return Collections.emptyList();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> getSequenceNumber(file) >= 0)
+                    .sorted(Comparator.comparingLong(ArtifactStore::getSequenceNumber))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Optional<Path> getLatestSnapshot() throws IOException {
+        List<Path> snapshots = getSnapshots();
+        return snapshots.isEmpty() ? Optional.empty() : Optional.of(snapshots.get(snapshots.size() - 1));
+    }
+
+    public synchronized boolean hasSnapshot() {
+        try {
+            return getLatestSnapshot().isPresent();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized FeatureModel loadSnapshot() {
+        try {
+            Path snapshot = getLatestSnapshot().orElseThrow(() -> new RuntimeException("no snapshot found in " + directory));
+            Logger.info("loading snapshot {}", snapshot);
+            if (snapshot.getFileName().toString().endsWith(".bin"))
+                try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                    return BinarySnapshot.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+            return FeatureModels.load(Files.readString(snapshot), snapshot.getFileName().toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads all operations applied since the latest snapshot. A record that was only partially written
+     * (e.g., due to a crash) ends the log and is discarded.
+     */
+    public synchronized List<JsonObject> readLog() {
+        try {
+            long snapshotSequenceNumber = getLatestSnapshot().map(ArtifactStore::getSequenceNumber).orElse(0L);
+            FileChannel log = getLog();
+            ByteBuffer buffer = ByteBuffer.allocate((int) log.size());
+            while (buffer.hasRemaining())
+                if (log.read(buffer, buffer.position()) < 0)
+                    break;
+            byte[] bytes = buffer.array();
+
+            List<JsonObject> records = new ArrayList<>();
+            sequenceNumber = snapshotSequenceNumber;
+            int start = 0, validLength = 0;
+            for (int i = 0; i < bytes.length; i++)
+                if (bytes[i] == '\n') {
+                    JsonObject record;
+                    long recordSequenceNumber;
+                    try {
+                        record = JsonParser.parseString(new String(bytes, start, i - start, StandardCharsets.UTF_8)).getAsJsonObject();
+                        recordSequenceNumber = record.get("seq").getAsLong();
+                    } catch (RuntimeException e) {
+                        Logger.warn("discarding corrupt operation log in {} after {} bytes", directory, validLength);
+                        break;
+                    }
+                    if (recordSequenceNumber > snapshotSequenceNumber) {
+                        records.add(record);
+                        sequenceNumber = recordSequenceNumber;
+                    }
+                    start = validLength = i + 1;
+                }
+
+            log.truncate(validLength);
+            log.position(validLength);
+            recordsSinceSnapshot = records.size();
+            return records;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends an operation to the log. It is flushed to disk with the next group commit.
+     */
+    public synchronized void append(JsonObject record) {
+        if (isDeleted)
+            return;
+        try {
+            record.addProperty("seq", ++sequenceNumber);
+            ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+            FileChannel log = getLog();
+            while (buffer.hasRemaining())
+                log.write(buffer);
+            recordsSinceSnapshot++;
+            isDirty = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized int getRecordsSinceSnapshot() {
+        return recordsSinceSnapshot;
+    }
+
+    /**
+     * Replaces the latest snapshot and clears the log.
+     * The feature model is encoded before acquiring this store's lock, so it must not be modified concurrently.
+     */
+    public void writeSnapshot(FeatureModel featureModel) {
+        ByteBuffer data;
+        String extension;
+        try {
+            data = BinarySnapshot.write(featureModel);
+            extension = "bin";
+        } catch (UnsupportedOperationException e) {
+            Logger.warn("falling back to XML snapshot for {}: {}", directory, e.getMessage());
+            data = ByteBuffer.wrap(FeatureModels.serialize(featureModel, XML_FORMAT).getBytes(StandardCharsets.UTF_8));
+            extension = "xml";
+        }
+        writeSnapshot(data, extension);
+    }
+
+    private synchronized void writeSnapshot(ByteBuffer data, String extension) {
+        if (isDeleted)
+            return;
+        try {
+            Files.createDirectories(directory);
+            Path temporaryFile = directory.resolve("snapshot.tmp");
+            try (FileChannel channel = FileChannel.open(temporaryFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (data.hasRemaining())
+                    channel.write(data);
+                channel.force(true);
+            }
+            Path snapshot = directory.resolve("snapshot." + sequenceNumber + "." + extension);
+            Files.move(temporaryFile, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (Path oldSnapshot : getSnapshots())
+                if (!oldSnapshot.equals(snapshot))
+                    Files.delete(oldSnapshot);
+            getLog().truncate(0);
+            log.force(true);
+            recordsSinceSnapshot = 0;
+            isDirty = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void flush() {
+        if (!isDirty)
+            return;
+        try {
+            log.force(false);
+            isDirty = false;
+        } catch (IOException e) {
+            Logger.error(e);
+        }
+    }
+
+    /**
+     * Flushes and closes the log, which is reopened when it is accessed again.
+     */
+    public synchronized void close() {
+        flush();
+        try {
+            if (log != null)
+                log.close();
+            log = null;
+        } catch (IOException e) {
+            Logger.error(e);
+        }
+    }
+
+    synchronized void delete() {
+        isDeleted = true;
+        close();
+        deleteRecursively(directory);
+    }
+
+    static void deleteRecursively(Path directory) {
+        if (!Files.exists(directory))
+            return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                Files.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
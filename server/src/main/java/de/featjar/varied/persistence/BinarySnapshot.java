@@ -0,0 +1,165 @@
+package de.featjar.varied.persistence;
+
+import de.featjar.formula.structure.Formula;
+import de.featjar.formula.structure.atomic.literal.LiteralPredicate;
+import de.featjar.formula.structure.compound.*;
+import de.featjar.model.Feature;
+import de.featjar.model.FeatureModel;
+import de.featjar.model.FeatureTree;
+import de.featjar.model.Identifier;
+import de.featjar.varied.util.BinaryInput;
+import de.featjar.varied.util.BinaryOutput;
+import de.featjar.varied.util.ModelSnapshot;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of a feature model, which can be loaded much faster than XML.
+ * It consists of a table of all strings (feature names, descriptions and variables), followed by the feature tree
+ * in preorder (each feature referring to strings by index and storing its number of children), followed by the
+ * constraints' formulas in preorder.
+ * It is written from a {@link ModelSnapshot}, so it can be written on any thread.
+ * To load a snapshot, features and constraints are added to a new feature model.
+ */
+public class BinarySnapshot {
+    private static final int MAGIC = 0x56524453; // VRDS
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int ABSTRACT = 1, HIDDEN = 2, MANDATORY = 4, OR = 8, ALTERNATIVE = 16;
+    private static final int LITERAL = 0, NEGATED_LITERAL = 1, AND = 2, OR_FORMULA = 3, NOT = 4, IMPLIES = 5, BIIMPLIES = 6;
+
+    private static class StringTable {
+        private final Map<String, Integer> indices = new LinkedHashMap<>();
+
+        int get(String s) {
+            return indices.computeIfAbsent(s, _s -> indices.size());
+        }
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the feature model contains formulas that can not be encoded
+     */
+    public static ByteBuffer write(FeatureModel featureModel) {
+        return write(ModelSnapshot.of(featureModel, 0));
+    }
+
+    public static ByteBuffer write(ModelSnapshot snapshot) {
+        StringTable strings = new StringTable();
+        BinaryOutput body = new BinaryOutput();
+        writeFeatureTree(body, strings, snapshot.getRoot());
+        body.writeVarInt(snapshot.getConstraints().size());
+        snapshot.getConstraints().forEach(formula -> writeFormula(body, strings, formula));
+
+        BinaryOutput output = new BinaryOutput();
+        output.writeVarInt(MAGIC).writeVarInt(FORMAT_VERSION).writeVarInt(strings.indices.size());
+        strings.indices.keySet().forEach(output::writeString);
+        return output.write(body).toByteBuffer();
+    }
+
+    private static void writeFeatureTree(BinaryOutput output, StringTable strings, ModelSnapshot.Feature feature) {
+        output.writeVarInt(strings.get(feature.getName()));
+        output.writeVarInt(feature.getDescription().map(description -> strings.get(description) + 1).orElse(0));
+        output.writeByte((feature.isAbstract() ? ABSTRACT : 0) |
+                (feature.isHidden() ? HIDDEN : 0) |
+                (feature.isMandatory() ? MANDATORY : 0) |
+                (feature.getGroup() == ModelSnapshot.Group.OR ? OR : 0) |
+                (feature.getGroup() == ModelSnapshot.Group.ALTERNATIVE ? ALTERNATIVE : 0));
+        output.writeVarInt(feature.getChildren().size());
+        for (ModelSnapshot.Feature child : feature.getChildren())
+            writeFeatureTree(output, strings, child);
+    }
+
+    private static void writeFormula(BinaryOutput output, StringTable strings, ModelSnapshot.Formula formula) {
+        switch (formula.getType()) {
+            case LITERAL:
+            case NEGATED_LITERAL:
+                output.writeByte(formula.getType() == ModelSnapshot.Formula.Type.LITERAL ? LITERAL : NEGATED_LITERAL);
+                output.writeVarInt(strings.get(formula.getVariable()));
+                return;
+            case AND:
+                output.writeByte(AND);
+                break;
+            case OR:
+                output.writeByte(OR_FORMULA);
+                break;
+            case NOT:
+                output.writeByte(NOT);
+                break;
+            case IMPLIES:
+                output.writeByte(IMPLIES);
+                break;
+            case BIIMPLIES:
+                output.writeByte(BIIMPLIES);
+                break;
+        }
+        output.writeVarInt(formula.getChildren().size());
+        for (ModelSnapshot.Formula child : formula.getChildren())
+            writeFormula(output, strings, child);
+    }
+
+    public static FeatureModel read(ByteBuffer buffer) {
+        BinaryInput input = new BinaryInput(buffer);
+        if (input.readVarInt() != MAGIC || input.readVarInt() != FORMAT_VERSION)
+            throw new RuntimeException("invalid binary snapshot");
+        String[] strings = new String[input.readVarInt()];
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = input.readString();
+
+        // a new feature model consists of a root feature, which is overwritten with the snapshot's root
+        FeatureModel featureModel = new FeatureModel(Identifier.newCounter());
+        readFeatureTree(input, strings, featureModel.getFeatureTree().getFeature());
+        int numberOfConstraints = input.readVarInt();
+        for (int i = 0; i < numberOfConstraints; i++)
+            featureModel.mutate().createConstraint(readFormula(input, strings, featureModel));
+        return featureModel;
+    }
+
+    private static void readFeatureTree(BinaryInput input, String[] strings, Feature feature) {
+        feature.mutate().setName(strings[input.readVarInt()]);
+        int description = input.readVarInt();
+        feature.mutate().setDescription(description > 0 ? strings[description - 1] : null);
+        int flags = input.readByte();
+        feature.mutate().setAbstract((flags & ABSTRACT) != 0);
+        feature.mutate().setHidden((flags & HIDDEN) != 0);
+        FeatureTree.Mutator featureTreeMutator = feature.getFeatureTree().mutate();
+        featureTreeMutator.setMandatory((flags & MANDATORY) != 0);
+        if ((flags & OR) != 0)
+            featureTreeMutator.setOr();
+        else if ((flags & ALTERNATIVE) != 0)
+            featureTreeMutator.setAlternative();
+        else
+            featureTreeMutator.setAnd();
+        int numberOfChildren = input.readVarInt();
+        for (int i = 0; i < numberOfChildren; i++)
+            readFeatureTree(input, strings, feature.mutate().createFeatureBelow());
+    }
+
+    private static Formula readFormula(BinaryInput input, String[] strings, FeatureModel featureModel) {
+        int tag = input.readByte();
+        if (tag == LITERAL || tag == NEGATED_LITERAL)
+            return new LiteralPredicate(featureModel.getVariableMap().getBooleanVariable(strings[input.readVarInt()])
+                    .orElseThrow(() -> new RuntimeException("unknown variable in binary snapshot")), tag == LITERAL);
+        List<Formula> children = new ArrayList<>();
+        int numberOfChildren = input.readVarInt();
+        for (int i = 0; i < numberOfChildren; i++)
+            children.add(readFormula(input, strings, featureModel));
+        switch (tag) {
+            case AND:
+                return new And(children);
+            case OR_FORMULA:
+                return new Or(children);
+            case NOT:
+                return new Not(children.get(0));
+            case IMPLIES:
+                return new Implies(children.get(0), children.get(1));
+            case BIIMPLIES:
+                return new Biimplies(children.get(0), children.get(1));
+            default:
+                throw new RuntimeException("invalid formula in binary snapshot");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package de.featjar.varied.persistence;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import de.featjar.model.FeatureModel;
+import de.featjar.model.FeatureTree;
+import de.featjar.varied.api.Api;
+import de.featjar.varied.api.Message;
+import de.featjar.varied.util.FeatureIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts operations to records for the operation log and back.
+ * Feature identifiers are not preserved when a snapshot is loaded, so records refer to features by their position
+ * in the feature tree (i.e., the indices of all features on the path from the root), which is preserved.
+ * Positions are determined before an operation is applied, just like identifiers are resolved.
+ */
+public class OperationRecord {
+    public static boolean isOperation(Message.IDecodable message) {
+        return message instanceof Api.OperationFeatureCreateBelow || message instanceof Api.OperationFeatureRemove;
+    }
+
+    /**
+     * Combines the records of a batch into one record, so that it is either logged completely or not at all.
+     * The records must have been created one after another, each before its operation was applied.
+     */
+    public static JsonObject toBatchRecord(List<JsonObject> records) {
+        JsonObject record = new JsonObject();
+        record.addProperty("type", Api.TypeEnum.OPERATION_BATCH.toString());
+        JsonArray operations = new JsonArray();
+        records.forEach(operations::add);
+        record.add("operations", operations);
+        return record;
+    }
+
+    /**
+     * @return the records of a batch, which have to be converted to messages and applied one after another
+     */
+    public static List<JsonObject> getRecords(JsonObject record) {
+        if (!record.get("type").getAsString().equals(Api.TypeEnum.OPERATION_BATCH.toString()))
+            return List.of(record);
+        List<JsonObject> records = new ArrayList<>();
+        for (JsonElement operation : record.getAsJsonArray("operations"))
+            records.add(operation.getAsJsonObject());
+        return records;
+    }
+
+    public static JsonObject toRecord(FeatureIndex featureIndex, Message.IDecodable message) {
+        JsonObject record = new JsonObject();
+        record.addProperty("type", ((Message) message).getType().toString());
+        if (message instanceof Api.OperationFeatureCreateBelow)
+            record.add("featureParent", getPosition(featureIndex, ((Api.OperationFeatureCreateBelow) message).featureParentID));
+        if (message instanceof Api.OperationFeatureRemove) {
+            JsonArray features = new JsonArray();
+            Arrays.stream(((Api.OperationFeatureRemove) message).featureIDs)
+                    .map(featureID -> getPosition(featureIndex, featureID))
+                    .forEach(features::add);
+            record.add("features", features);
+        }
+        return record;
+    }
+
+    public static Message.IDecodable toMessage(FeatureModel featureModel, JsonObject record) {
+        String type = record.get("type").getAsString();
+        if (type.equals(Api.TypeEnum.OPERATION_FEATURE_CREATE_BELOW.toString())) {
+            Api.OperationFeatureCreateBelow message = new Api.OperationFeatureCreateBelow();
+            message.featureParentID = getFeatureID(featureModel, record.getAsJsonArray("featureParent"));
+            return message;
+        }
+        if (type.equals(Api.TypeEnum.OPERATION_FEATURE_REMOVE.toString())) {
+            Api.OperationFeatureRemove message = new Api.OperationFeatureRemove();
+            JsonArray features = record.getAsJsonArray("features");
+            message.featureIDs = new String[features.size()];
+            for (int i = 0; i < features.size(); i++)
+                message.featureIDs[i] = getFeatureID(featureModel, features.get(i).getAsJsonArray());
+            return message;
+        }
+        throw new RuntimeException("invalid operation record of type " + type);
+    }
+
+    private static JsonArray getPosition(FeatureIndex featureIndex, String featureID) {
+        JsonArray position = new JsonArray();
+        FeatureTree featureTree = featureIndex.getFeatureTree(featureID);
+        while (featureTree.getParent().isPresent()) {
+            FeatureTree parent = featureTree.getParent().get();
+            position.add(parent.getChildren().indexOf(featureTree));
+            featureTree = parent;
+        }
+        JsonArray reversedPosition = new JsonArray();
+        for (int i = position.size() - 1; i >= 0; i--)
+            reversedPosition.add(position.get(i));
+        return reversedPosition;
+    }
+
+    private static String getFeatureID(FeatureModel featureModel, JsonArray position) {
+        FeatureTree featureTree = featureModel.getFeatureTree();
+        for (JsonElement index : position)
+            featureTree = featureTree.getChildren().get(index.getAsInt());
+        return featureTree.getFeature().getIdentifier().toString();
+    }
+}
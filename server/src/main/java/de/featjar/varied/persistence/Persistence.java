@@ -0,0 +1,124 @@
+package de.featjar.varied.persistence;
+
+import de.featjar.varied.project.Artifact;
+import org.pmw.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persists artifacts in the data directory, so that edits survive a restart of the server.
+ * Each artifact has its own store. Operation logs of all stores are flushed to disk together every few
+ * milliseconds (group commit), so that bursty editing does not cause one disk sync per operation.
+ * Persistence is disabled if the data directory is set to an empty string.
+ */
+public class Persistence {
+    private static final String DATA_DIRECTORY = System.getProperty("varied.dataDirectory",
+            Paths.get(System.getProperty("user.home"), ".varied").toString());
+    private static final long FLUSH_INTERVAL = Long.getLong("varied.logFlushInterval", 20);
+
+    private static Persistence instance;
+    private final Path artifactsDirectory;
+    private final Map<Artifact.Path, ArtifactStore> stores = new ConcurrentHashMap<>();
+
+    private Persistence() {
+        artifactsDirectory = DATA_DIRECTORY.isEmpty() ? null : Paths.get(DATA_DIRECTORY, "artifacts");
+        if (artifactsDirectory != null) {
+            Logger.info("persisting artifacts in {}", artifactsDirectory);
+            ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "persistence");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+        }
+    }
+
+    public static synchronized Persistence getInstance() {
+        return instance == null ? instance = new Persistence() : instance;
+    }
+
+    public boolean isEnabled() {
+        return artifactsDirectory != null;
+    }
+
+    private static String encode(String name) {
+        return URLEncoder.encode(name, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String name) {
+        return URLDecoder.decode(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the directory for caching sources of remote artifacts, which survives resets of the server
+     */
+    Optional<Path> getCacheDirectory() {
+        return isEnabled() ? Optional.of(artifactsDirectory.resolveSibling("cache")) : Optional.empty();
+    }
+
+    public Optional<ArtifactStore> getStore(Artifact.Path artifactPath) {
+        if (!isEnabled())
+            return Optional.empty();
+        return Optional.of(stores.computeIfAbsent(artifactPath, _artifactPath -> new ArtifactStore(
+                artifactsDirectory.resolve(encode(artifactPath.getProjectName()))
+                        .resolve(encode(artifactPath.getArtifactName())))));
+    }
+
+    /**
+     * @return paths of all artifacts that have been persisted, including those added by users
+     */
+    public Collection<Artifact.Path> getStoredArtifactPaths() {
+        if (!isEnabled() || !Files.isDirectory(artifactsDirectory))
+            return Collections.emptyList();
+        try (Stream<Path> projectDirectories = Files.list(artifactsDirectory)) {
+            List<Artifact.Path> artifactPaths = new ArrayList<>();
+            for (Path projectDirectory : projectDirectories.collect(Collectors.toList()))
+                try (Stream<Path> artifactDirectories = Files.list(projectDirectory)) {
+                    artifactDirectories
+                            .filter(artifactDirectory -> new ArtifactStore(artifactDirectory).hasSnapshot())
+                            .map(artifactDirectory -> new Artifact.Path(
+                                    decode(projectDirectory.getFileName().toString()),
+                                    decode(artifactDirectory.getFileName().toString())))
+                            .forEach(artifactPaths::add);
+                }
+            return artifactPaths;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void removeStore(Artifact.Path artifactPath) {
+        getStore(artifactPath).ifPresent(ArtifactStore::delete);
+        stores.remove(artifactPath);
+    }
+
+    /**
+     * Deletes all persisted artifacts.
+     */
+    public void clear() {
+        if (!isEnabled())
+            return;
+        stores.values().forEach(ArtifactStore::delete);
+        stores.clear();
+        ArtifactStore.deleteRecursively(artifactsDirectory);
+    }
+
+    private void flush() {
+        stores.values().forEach(ArtifactStore::flush);
+    }
+}
@@ -0,0 +1,148 @@
+package de.featjar.varied.persistence;
+
+import org.pmw.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caches sources of remote artifacts in the data directory, so that each URL is fetched only once.
+ * Sources are stored content-addressed as {@code cache/sources/<SHA-256 of source>}, and each URL refers to its
+ * source with a file {@code cache/urls/<SHA-256 of URL>} containing the source's hash. Thus, the cache can also be
+ * seeded by hand (e.g., to run the server offline). If persistence is disabled, sources are fetched every time.
+ * In offline mode, sources are never fetched, so a seeded cache can be tested without network access.
+ */
+public class SourceCache {
+    private static final int TIMEOUT = Integer.getInteger("varied.remoteArtifactTimeout", 10000);
+    private static final boolean OFFLINE = Boolean.getBoolean("varied.offline");
+    private static final int PREFETCH_THREADS = Integer.getInteger("varied.prefetchThreads", 4);
+
+    private static SourceCache instance;
+    private ExecutorService prefetcher;
+
+    private SourceCache() {
+    }
+
+    public static synchronized SourceCache getInstance() {
+        return instance == null ? instance = new SourceCache() : instance;
+    }
+
+    private static String hash(String s) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Optional<String> read(Path cacheDirectory, String url) throws IOException {
+        Path urlFile = cacheDirectory.resolve("urls").resolve(hash(url));
+        if (!Files.exists(urlFile))
+            return Optional.empty();
+        Path sourceFile = cacheDirectory.resolve("sources").resolve(Files.readString(urlFile).trim());
+        if (!Files.exists(sourceFile))
+            return Optional.empty();
+        String source = Files.readString(sourceFile);
+        if (!sourceFile.getFileName().toString().equals(hash(source))) {
+            Logger.warn("discarding corrupt cached source {}", sourceFile);
+            return Optional.empty();
+        }
+        return Optional.of(source);
+    }
+
+    private static void writeAtomically(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporaryFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temporaryFile, content);
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private void write(Path cacheDirectory, String url, String source) throws IOException {
+        String sourceHash = hash(source);
+        writeAtomically(cacheDirectory.resolve("sources").resolve(sourceHash), source);
+        writeAtomically(cacheDirectory.resolve("urls").resolve(hash(url)), sourceHash);
+    }
+
+    private static String fetch(String url) throws IOException {
+        if (OFFLINE)
+            throw new IOException("source is not cached and fetching is disabled in offline mode");
+        Logger.info("fetching remote source from {}", url);
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        try (InputStream inputStream = connection.getInputStream()) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Returns the source at the given URL, fetching it only if it has not been cached yet.
+     * This may block, so it should not be called on a socket's thread.
+     */
+    public String get(String url) {
+        try {
+            Optional<Path> cacheDirectory = Persistence.getInstance().getCacheDirectory();
+            if (cacheDirectory.isEmpty())
+                return fetch(url);
+            Optional<String> source = read(cacheDirectory.get(), url);
+            if (source.isPresent())
+                return source.get();
+            String fetchedSource = fetch(url);
+            write(cacheDirectory.get(), url, fetchedSource);
+            return fetchedSource;
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not fetch remote source at URL " + url, e);
+        }
+    }
+
+    /**
+     * Fetches the given URLs into the cache in the background, so that later loads do not access the network.
+     */
+    public synchronized void prefetch(Collection<String> urls) {
+        if (Persistence.getInstance().getCacheDirectory().isEmpty()) {
+            Logger.warn("not prefetching remote sources, as persistence is disabled");
+            return;
+        }
+        if (OFFLINE) {
+            Logger.warn("not prefetching remote sources in offline mode");
+            return;
+        }
+        if (prefetcher == null) {
+            AtomicInteger counter = new AtomicInteger();
+            prefetcher = Executors.newFixedThreadPool(PREFETCH_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "prefetch-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        Logger.info("prefetching {} remote sources", urls.size());
+        for (String url : urls)
+            prefetcher.execute(() -> {
+                try {
+                    get(url);
+                } catch (RuntimeException e) {
+                    Logger.warn("could not prefetch {}: {}", url, e.getMessage());
+                }
+            });
+    }
+}
@@ -1,12 +1,17 @@
 package de.featjar.varied.project;
 
 import com.google.gson.annotations.Expose;
+import de.featjar.varied.persistence.ArtifactStore;
+import de.featjar.varied.persistence.Persistence;
+import de.featjar.varied.session.Dispatcher;
 import de.featjar.varied.session.Session;
 import de.featjar.varied.util.FeatureModels;
 import de.featjar.varied.util.Strings;
 
 import java.net.URL;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 public abstract class Artifact {
@@ -41,6 +46,27 @@ public abstract class Artifact {
 
     abstract public Session getSession();
 
+    /**
+     * @return the session, which is created in the background if it has not been created yet
+     */
+    abstract public CompletableFuture<Session> getSessionAsync();
+
+    /**
+     * @return whether the session is being created or has users
+     */
+    abstract public boolean isInProcess();
+
+    /**
+     * @return the session if it has been created (and not unloaded since)
+     */
+    abstract Optional<Session> getResidentSession();
+
+    /**
+     * Unloads the session, which is recreated on the next access, if this does not lose any state.
+     * This must only be called while running exclusively.
+     */
+    abstract boolean unload();
+
     public static class Path {
         static String SEPARATOR = "/";
 
@@ -50,7 +76,7 @@ public abstract class Artifact {
         @Expose
         String artifact;
 
-        Path(String projectName, String artifactName) {
+        public Path(String projectName, String artifactName) {
             this.project = projectName;
             this.artifact = artifactName;
         }
@@ -70,11 +96,24 @@ public abstract class Artifact {
         public String toString() {
             return getProjectName() + SEPARATOR + getArtifactName();
         }
+
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Path path = (Path) o;
+            return Objects.equals(project, path.project) && Objects.equals(artifact, path.artifact);
+        }
+
+        public int hashCode() {
+            return Objects.hash(project, artifact);
+        }
     }
 
     public static class FeatureModel extends Artifact {
         private final Supplier<de.featjar.model.FeatureModel> featureModelSupplier;
-        private Session session;
+        private CompletableFuture<Session> session;
 
         public FeatureModel(Project project, String name, String source) {
             this(project, name, source, name + ".xml");
@@ -93,10 +132,59 @@ public abstract class Artifact {
             this.featureModelSupplier = featureModelSupplier;
         }
 
+        /**
+         * Loads the feature model, which may take long (e.g., for a remote artifact), but does not access shared state.
+         */
+        private de.featjar.model.FeatureModel loadFeatureModel() {
+            ArtifactStore store = Persistence.getInstance().getStore(getPath()).orElse(null);
+            return store != null && store.hasSnapshot()
+                    ? store.loadSnapshot()
+                    : featureModelSupplier.get();
+        }
+
+        private Session createSession(de.featjar.model.FeatureModel featureModel) {
+            return new Session.FeatureModel(getPath(), featureModel, Persistence.getInstance().getStore(getPath()).orElse(null));
+        }
+
+        /**
+         * Creates the session in the calling thread if it has not been created yet.
+         * While running exclusively, this must only be called for artifacts whose session can not be in creation
+         * in the background (e.g., new artifacts), because the background creation waits for the exclusive run.
+         */
         public Session getSession() {
-            if (this.session == null)
-                this.session = new Session.FeatureModel(getPath(), featureModelSupplier.get());
+            CompletableFuture<Session> session;
+            synchronized (this) {
+                if (this.session == null || this.session.isCompletedExceptionally())
+                    this.session = CompletableFuture.completedFuture(createSession(loadFeatureModel()));
+                session = this.session;
+            }
+            return session.join();
+        }
+
+        // failed creations (e.g., due to a network error) are retried on the next call
+        public synchronized CompletableFuture<Session> getSessionAsync() {
+            if (session == null || session.isCompletedExceptionally())
+                session = Dispatcher.getInstance().supplyAsync(this::loadFeatureModel, this::createSession);
             return session;
         }
+
+        public synchronized boolean isInProcess() {
+            return session != null && (!session.isDone() ||
+                    !session.isCompletedExceptionally() && session.join().isInProcess());
+        }
+
+        synchronized Optional<Session> getResidentSession() {
+            return session != null && session.isDone() && !session.isCompletedExceptionally()
+                    ? Optional.of(session.join())
+                    : Optional.empty();
+        }
+
+        synchronized boolean unload() {
+            Optional<Session> residentSession = getResidentSession();
+            if (residentSession.isEmpty() || !residentSession.get().unload())
+                return false;
+            session = null;
+            return true;
+        }
     }
 }
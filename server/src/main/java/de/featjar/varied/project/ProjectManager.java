@@ -2,22 +2,24 @@ package de.featjar.varied.project;
 
 import de.featjar.util.extension.ExtensionLoader;
 import de.featjar.varied.Main;
+import de.featjar.varied.persistence.Persistence;
+import de.featjar.varied.persistence.SourceCache;
 import de.featjar.varied.util.Strings;
 import de.featjar.varied.util.FeatureModels;
 import org.pmw.tinylog.Logger;
 
-import java.io.IOException;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class ProjectManager {
+    private static final String FEATUREIDE_EXAMPLES_URL = System.getProperty("varied.featureIDEExamplesURL",
+            "https://raw.githubusercontent.com/FeatureIDE/FeatureIDE/56bb944775e2a3087a1bd8f93334aa4f7a6712dc" +
+                    "/plugins/de.ovgu.featureide.examples/featureide_examples/FeatureModels/");
+    private static final boolean PREFETCH_REMOTE_ARTIFACTS = Boolean.getBoolean("varied.prefetchRemoteArtifacts");
+
     private static ProjectManager instance;
     private final Map<String, Project> projects = new ConcurrentHashMap<>();
     public static String EMPTY = "Empty";
@@ -29,7 +31,7 @@ public class ProjectManager {
     private ProjectManager() {
     }
 
-    public static ProjectManager getInstance() {
+    public static synchronized ProjectManager getInstance() {
         return instance == null ? instance = new ProjectManager() : instance;
     }
 
@@ -46,6 +48,7 @@ public class ProjectManager {
         addProject(examplesProject);
 
         // adds the FeatureIDE examples as of June 2018
+        List<String> featureIDEURLs = new ArrayList<>();
         for (String artifactName : new String[]{
                 "aaed2000", "adderII", "adder", "aeb", "aim711", "aki3068net", "am31_sim", "APL-Model", "APL",
                 "asb2305", "asb", "assabet", "at91sam7sek", "at91sam7xek", "atlas_mips32_4kc", "atlas_mips64_5kc",
@@ -66,11 +69,19 @@ public class ProjectManager {
                 "sparclite_sim", "stb", "stdeval1", "stm3210e_eval", "TightVNC", "ts1000", "ts6", "tx39_sim",
                 "uClibc-Base", "uClibc-Distribution", "uClibc", "uE250", "vads", "Violet", "viper", "vrc4373",
                 "vrc4375", "WaterlooGenerated", "XSEngine"
-        })
-            addRemoteArtifact(featureIDEProject, artifactName,
-                    "https://raw.githubusercontent.com/FeatureIDE/FeatureIDE/56bb944775e2a3087a1bd8f93334aa4f7a6712dc" +
-                            "/plugins/de.ovgu.featureide.examples/featureide_examples/FeatureModels/" + artifactName + "/model.xml");
+        }) {
+            String url = FEATUREIDE_EXAMPLES_URL + artifactName + "/model.xml";
+            addRemoteArtifact(featureIDEProject, artifactName, url);
+            featureIDEURLs.add(url);
+        }
         addProject(featureIDEProject);
+        if (PREFETCH_REMOTE_ARTIFACTS)
+            SourceCache.getInstance().prefetch(featureIDEURLs);
+
+        // adds artifacts that have been persisted, but are not built in (e.g., because they were added by users)
+        for (Artifact.Path artifactPath : Persistence.getInstance().getStoredArtifactPaths())
+            if (getArtifact(artifactPath) == null)
+                addStoredArtifact(artifactPath);
     }
 
     Project getProject(String name) {
@@ -92,15 +103,17 @@ public class ProjectManager {
     void addRemoteArtifact(Project project, String artifactName, String url) {
         // use this with caution, as attackers may use it maliciously!
         project.addArtifact(new Artifact.FeatureModel(project, artifactName,
-                () -> {
-                    try {
-                        Logger.info("loading remote artifact from " + url);
-                        String source = new Scanner(new URL(url).openStream(), "UTF-8").useDelimiter("\\A").next();
-                        return FeatureModels.load(source, artifactName + ".xml");
-                    } catch (IOException e) {
-                        throw new RuntimeException("could not add remote artifact at URL " + url);
-                    }
-                }));
+                () -> FeatureModels.load(SourceCache.getInstance().get(url), artifactName + ".xml")));
+    }
+
+    void addStoredArtifact(Artifact.Path artifactPath) {
+        Project project = getProject(artifactPath);
+        if (project == null) {
+            project = new Project(artifactPath.getProjectName());
+            addProject(project);
+        }
+        project.addArtifact(new Artifact.FeatureModel(project, artifactPath.getArtifactName(),
+                () -> Persistence.getInstance().getStore(artifactPath).orElseThrow().loadSnapshot()));
     }
 
     void addExampleArtifact(Project project, String artifactName) {
@@ -0,0 +1,127 @@
+package de.featjar.varied.project;
+
+import de.featjar.varied.metrics.Metrics;
+import de.featjar.varied.session.Dispatcher;
+import de.featjar.varied.session.Session;
+import org.pmw.tinylog.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Unloads sessions nobody is in, so that touching many artifacts does not fill the heap.
+ * Sessions are unloaded when they have been idle for longer than the idle timeout, or, least recently used first,
+ * when the estimated size of all resident sessions exceeds the memory budget. Unloaded sessions are recreated on the
+ * next access (persisting their state before, if possible, see {@link Session#prepareUnload()}).
+ */
+public class ResidencyManager {
+    private static final long IDLE_TIMEOUT = Long.getLong("varied.sessionIdleTimeout", 600) * 1000;
+    private static final long MEMORY_BUDGET = Long.getLong("varied.sessionMemoryBudget",
+            Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024)) * 1024 * 1024;
+    private static final long CHECK_INTERVAL = 10;
+
+    private static ResidencyManager instance;
+    private final AtomicLong unloadedSessions = new AtomicLong();
+
+    private ResidencyManager() {
+        Metrics.gauge("varied_sessions", "number of sessions loaded in memory", this::getResidentSessionCount);
+        Metrics.gauge("varied_sessions_in_process", "number of sessions with users",
+                () -> getResidentSessions().values().stream().filter(Session::isInProcess).count());
+        Metrics.gauge("varied_session_queue_size", "number of tasks waiting in any session's mailbox",
+                () -> getResidentSessions().values().stream().mapToInt(Session::getQueueSize).sum());
+        Metrics.gauge("varied_session_resident_bytes", "estimated heap size of all loaded sessions", this::getResidentSize);
+        Metrics.gauge("varied_unloaded_sessions", "number of sessions unloaded from memory", this::getUnloadedSessions);
+    }
+
+    public static synchronized ResidencyManager getInstance() {
+        return instance == null ? instance = new ResidencyManager() : instance;
+    }
+
+    public void start() {
+        Logger.info("unloading sessions idle for {} s or exceeding {} MB", IDLE_TIMEOUT / 1000, MEMORY_BUDGET / (1024 * 1024));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "residency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                unloadSessions();
+            } catch (Throwable t) {
+                Logger.error(t);
+            }
+        }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    private static Map<Artifact, Session> getResidentSessions() {
+        Map<Artifact, Session> residentSessions = new HashMap<>();
+        for (Artifact artifact : ProjectManager.getInstance().getArtifacts())
+            artifact.getResidentSession().ifPresent(session -> residentSessions.put(artifact, session));
+        return residentSessions;
+    }
+
+    /**
+     * @return artifacts whose sessions should be unloaded, least recently used first
+     */
+    private static List<Artifact> getUnloadableArtifacts(Map<Artifact, Session> residentSessions) {
+        long now = System.currentTimeMillis();
+        long residentSize = residentSessions.values().stream().mapToLong(Session::getResidentSize).sum();
+        List<Artifact> artifacts = new ArrayList<>();
+        for (Map.Entry<Artifact, Session> entry : residentSessions.entrySet().stream()
+                .filter(entry -> !entry.getValue().isInProcess())
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().getLastAccessTime()))
+                .collect(Collectors.toList()))
+            if (residentSize > MEMORY_BUDGET || now - entry.getValue().getLastAccessTime() > IDLE_TIMEOUT) {
+                artifacts.add(entry.getKey());
+                residentSize -= entry.getValue().getResidentSize();
+            }
+        return artifacts;
+    }
+
+    void unloadSessions() {
+        // check first without blocking the sessions, as usually there is nothing to do
+        List<Artifact> artifacts = getUnloadableArtifacts(getResidentSessions());
+        if (artifacts.isEmpty())
+            return;
+        // persist the sessions on their own mailboxes, so that unloading them only blocks for checking and detaching
+        List<CompletableFuture<Void>> preparations = new ArrayList<>();
+        for (Artifact artifact : artifacts)
+            artifact.getResidentSession().map(Session::prepareUnload).ifPresent(preparations::add);
+        for (CompletableFuture<Void> preparation : preparations)
+            try {
+                preparation.join();
+            } catch (CompletionException e) {
+                Logger.error(e.getCause());
+            }
+        Dispatcher.getInstance().runExclusively(() -> {
+            for (Artifact artifact : getUnloadableArtifacts(getResidentSessions()))
+                if (artifact.unload())
+                    unloadedSessions.incrementAndGet();
+        });
+    }
+
+    public int getResidentSessionCount() {
+        return getResidentSessions().size();
+    }
+
+    /**
+     * @return estimated number of bytes all resident sessions occupy on the heap
+     */
+    public long getResidentSize() {
+        return getResidentSessions().values().stream().mapToLong(Session::getResidentSize).sum();
+    }
+
+    public long getUnloadedSessions() {
+        return unloadedSessions.get();
+    }
+}
@@ -0,0 +1,192 @@
+package de.featjar.varied.session;
+
+import de.featjar.varied.analysis.Analyzer;
+import de.featjar.varied.api.Api;
+import de.featjar.varied.api.Message;
+import de.featjar.varied.metrics.Counter;
+import de.featjar.varied.metrics.Family;
+import de.featjar.varied.metrics.Metrics;
+import de.featjar.varied.util.ModelSnapshot;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Runs the analyses requested in a feature model session in the background, one at a time, on the latest snapshot.
+ * Interactive requests (e.g., the status of a focused feature or whether the model is void) run before bulk requests
+ * (e.g., all dead features), and a user's new request replaces its pending request of the same type.
+ * An analysis is cancelled as soon as the feature model changes and repeated on the new snapshot, as its result would
+ * be outdated anyway. A session only occupies one work thread at a time, and only for a time slice, after which the
+ * analysis yields to the work of other sessions and later resumes where it stopped (see {@link Analyzer}).
+ * An analysis that takes more CPU time than allowed in total fails, so one huge model can not occupy a thread forever.
+ */
+class AnalysisScheduler {
+    private static final long TIME_SLICE = Long.getLong("varied.analysisTimeSlice", 50);
+    private static final long TIME_LIMIT = Long.getLong("varied.analysisTimeLimit", 60);
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private static final Family<Counter> STOPPED_ANALYSES = Metrics.counter("varied_analysis_stopped_total",
+            "number of times an analysis was stopped because the model changed (cancelled), " +
+                    "its time slice ended (yielded) or its time limit was exceeded (failed)", "reason");
+
+    private static class Request {
+        final User user;
+        final Message.IDecodable message;
+        final boolean isInteractive;
+        final long sequenceNumber;
+
+        /**
+         * CPU time spent in previous time slices, in nanoseconds
+         */
+        long time;
+
+        Request(User user, Message.IDecodable message, long sequenceNumber) {
+            this.user = user;
+            this.message = message;
+            this.isInteractive = !(message instanceof Api.FeatureAnalysis) || ((Api.FeatureAnalysis) message).featureIDs != null;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        boolean isReplacedBy(Request request) {
+            return user == request.user && message.getClass() == request.message.getClass() &&
+                    isInteractive == request.isInteractive;
+        }
+    }
+
+    private final Session.FeatureModel session;
+    private final Analyzer analyzer = new Analyzer();
+
+    // interactive requests first, otherwise in order
+    private final PriorityQueue<Request> requests = new PriorityQueue<>(
+            Comparator.<Request, Boolean>comparing(request -> !request.isInteractive)
+                    .thenComparingLong(request -> request.sequenceNumber));
+    private long sequenceNumber;
+    private boolean isRunning;
+
+    AnalysisScheduler(Session.FeatureModel session) {
+        this.session = session;
+    }
+
+    synchronized void submit(User user, Message.IDecodable message) {
+        Request request = new Request(user, message, sequenceNumber++);
+        requests.removeIf(pending -> pending.isReplacedBy(request));
+        requests.add(request);
+        if (!isRunning) {
+            isRunning = true;
+            runLater();
+        }
+    }
+
+    /**
+     * Removes the pending requests of a user, e.g., when it leaves the session.
+     */
+    synchronized void cancel(User user) {
+        requests.removeIf(request -> request.user == user);
+    }
+
+    /**
+     * Runs the next request on the work pool. As it is queued behind other work, sessions take turns.
+     */
+    private void runLater() {
+        try {
+            Dispatcher.getInstance().executeWork(this::runNext);
+        } catch (RejectedExecutionException e) {
+            // the pool is busy, so the analysis is only retried later instead of failing
+            Dispatcher.getInstance().schedule(this::runLater, TIME_SLICE);
+        }
+    }
+
+    private static long getTime() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()
+                ? THREAD_MX_BEAN.getCurrentThreadCpuTime()
+                : System.nanoTime();
+    }
+
+    private void runNext() {
+        Request request;
+        synchronized (this) {
+            request = requests.poll();
+            if (request == null) {
+                isRunning = false;
+                return;
+            }
+        }
+        ModelSnapshot snapshot = session.getSnapshot();
+        long startTime = getTime(), sliceEndTime = System.nanoTime() + TIME_SLICE * 1_000_000;
+        Analyzer.Interruption interruption = new Analyzer.Interruption() {
+            public boolean isCancelled() {
+                return session.getSnapshot() != snapshot ||
+                        request.time + getTime() - startTime > TIME_LIMIT * 1_000_000_000;
+            }
+
+            public boolean shouldYield() {
+                return System.nanoTime() > sliceEndTime;
+            }
+        };
+        try {
+            if (snapshot == null)
+                throw new RuntimeException("feature model can not be analyzed");
+            Function<Long, Message.IEncodable> response = analyze(snapshot, request.message, interruption);
+            session.execute(() -> session.onAnalyzed(request.user, request.message, snapshot, response));
+        } catch (Analyzer.StoppedException e) {
+            // time spent on outdated snapshots does not count, as the analysis starts over on the new snapshot
+            boolean isOutdated = session.getSnapshot() != snapshot;
+            request.time = isOutdated ? 0 : request.time + getTime() - startTime;
+            if (request.time > TIME_LIMIT * 1_000_000_000) {
+                STOPPED_ANALYSES.get("failed").increment();
+                fail(request, new RuntimeException("analysis took longer than " + TIME_LIMIT + " seconds"));
+            } else {
+                STOPPED_ANALYSES.get(isOutdated ? "cancelled" : "yielded").increment();
+                // the request keeps its priority and place in the queue, unless it has been replaced meanwhile
+                synchronized (this) {
+                    if (requests.stream().noneMatch(request::isReplacedBy))
+                        requests.add(request);
+                }
+            }
+        } catch (Throwable t) {
+            fail(request, t);
+        } finally {
+            synchronized (this) {
+                if (requests.isEmpty())
+                    isRunning = false;
+                else
+                    runLater();
+            }
+        }
+    }
+
+    private void fail(Request request, Throwable t) {
+        session.execute(() -> {
+            if (session.getUsers().contains(request.user))
+                request.user.send(new Api.Error(t));
+        });
+    }
+
+    /**
+     * @return the response for the analyzed version of the artifact data
+     */
+    private Function<Long, Message.IEncodable> analyze(ModelSnapshot snapshot, Message.IDecodable message,
+                                                       Analyzer.Interruption interruption) {
+        if (message instanceof Api.AnalysisVoidModel) {
+            boolean isVoid = analyzer.isVoid(snapshot, interruption);
+            return version -> new Api.AnalysisVoidModel(session.getArtifactPath(), version, isVoid);
+        }
+        String[] featureIDs = ((Api.FeatureAnalysis) message).featureIDs;
+        if (message instanceof Api.AnalysisDeadFeatures) {
+            List<String> result = analyzer.getFeatures(snapshot, Analyzer.Type.DEAD_FEATURES, featureIDs, interruption);
+            return version -> new Api.AnalysisDeadFeatures(session.getArtifactPath(), featureIDs, version, result);
+        }
+        if (message instanceof Api.AnalysisCoreFeatures) {
+            List<String> result = analyzer.getFeatures(snapshot, Analyzer.Type.CORE_FEATURES, featureIDs, interruption);
+            return version -> new Api.AnalysisCoreFeatures(session.getArtifactPath(), featureIDs, version, result);
+        }
+        List<String> result = analyzer.getFeatures(snapshot, Analyzer.Type.FALSE_OPTIONAL_FEATURES, featureIDs, interruption);
+        return version -> new Api.AnalysisFalseOptionalFeatures(session.getArtifactPath(), featureIDs, version, result);
+    }
+}
@@ -0,0 +1,185 @@
+package de.featjar.varied.session;
+
+import de.featjar.varied.metrics.Family;
+import de.featjar.varied.metrics.Histogram;
+import de.featjar.varied.metrics.Metrics;
+import de.featjar.varied.util.SerialExecutor;
+import org.pmw.tinylog.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Schedules the server's work. Every session has its own mailbox, so messages concerning one session are
+ * processed strictly in order, while different sessions are processed in parallel.
+ * Global operations (e.g., resetting the server or adding artifacts) are run exclusively, that is, they wait
+ * for running session tasks and no session task starts until they are done.
+ * <p>
+ * Optionally, sessions and sockets run on virtual threads (on Java 21 and newer), so that blocking work (e.g., loading
+ * a remote artifact) does not occupy a platform thread and idle users do not cost threads at all.
+ */
+public class Dispatcher {
+    private static final Family<Histogram> LOCK_WAIT_TIME = Metrics.histogram("varied_lock_wait_seconds",
+            "time waiting for running shared (session tasks) or exclusively (global operations)", "mode");
+
+    private static final boolean VIRTUAL_THREADS = Boolean.getBoolean("varied.virtualThreads");
+    private static final boolean ORDERED_DISPATCH = Boolean.parseBoolean(System.getProperty("varied.orderedDispatch", "true"));
+    private static final int WORK_THREADS = Integer.getInteger("varied.workThreads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int WORK_QUEUE_CAPACITY = Integer.getInteger("varied.workQueueCapacity", 64);
+
+    private static Dispatcher instance;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // a session occupies at most one thread at a time, so the number of threads is bounded by the number of sessions
+    private final ExecutorService executorService;
+    private final ExecutorService socketExecutorService;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory("scheduler"));
+
+    // CPU-heavy work on private copies of artifacts is bounded, so it can not starve the sessions
+    private final ExecutorService workExecutorService = new ThreadPoolExecutor(WORK_THREADS, WORK_THREADS,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(WORK_QUEUE_CAPACITY), new ThreadFactory("work"));
+
+    private Dispatcher() {
+        ExecutorService virtualThreadExecutorService = VIRTUAL_THREADS ? newVirtualThreadExecutorService() : null;
+        executorService = virtualThreadExecutorService != null
+                ? virtualThreadExecutorService
+                : Executors.newCachedThreadPool(new ThreadFactory("session"));
+        socketExecutorService = virtualThreadExecutorService;
+    }
+
+    /**
+     * Virtual threads are looked up reflectively, so the server still runs on older Java versions.
+     */
+    private static ExecutorService newVirtualThreadExecutorService() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "virtual-", 1L);
+            java.util.concurrent.ThreadFactory threadFactory =
+                    (java.util.concurrent.ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", java.util.concurrent.ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            Logger.warn("virtual threads are not available on Java {}, using platform threads", Runtime.version().feature());
+            return null;
+        }
+    }
+
+    public static synchronized Dispatcher getInstance() {
+        return instance == null ? instance = new Dispatcher() : instance;
+    }
+
+    public boolean isUsingVirtualThreads() {
+        return socketExecutorService != null;
+    }
+
+    /**
+     * Returns where a socket should handle its received messages. Without virtual threads, they are handled on the
+     * socket's thread, which receives the next message only afterwards. With virtual threads, every message is handled
+     * on a new virtual thread, either in order of arrival (the default) or in parallel.
+     */
+    public Executor newSocketExecutor() {
+        if (socketExecutorService == null)
+            return Runnable::run;
+        return ORDERED_DISPATCH ? new SerialExecutor(socketExecutorService) : socketExecutorService;
+    }
+
+    /**
+     * @return a new mailbox whose tasks do not overlap with global operations
+     */
+    SerialExecutor newSessionExecutor() {
+        return new SerialExecutor(runnable -> executorService.execute(() -> runShared(runnable)));
+    }
+
+    private void lockShared() {
+        long startTime = System.nanoTime();
+        lock.readLock().lock();
+        LOCK_WAIT_TIME.get("shared").recordSince(startTime);
+    }
+
+    private void runShared(Runnable runnable) {
+        Lock readLock = lock.readLock();
+        lockShared();
+        try {
+            runnable.run();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Runs a long-running task (e.g., loading an artifact) in the background, so that it does not block the caller.
+     * The loader runs without any lock, so slow I/O (e.g., fetching a remote artifact) does not hold up waiting global
+     * operations, which in turn would hold up all sessions. Only the constructor, which should be quick, does not
+     * overlap with global operations, like session tasks.
+     */
+    public <U, T> CompletableFuture<T> supplyAsync(Supplier<U> loader, Function<U, T> constructor) {
+        return CompletableFuture.supplyAsync(loader, executorService).thenApply(result -> {
+            Lock readLock = lock.readLock();
+            lockShared();
+            try {
+                return constructor.apply(result);
+            } finally {
+                readLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Runs CPU-heavy work (e.g., exporting a feature model) in the background. Unlike session tasks, it may overlap
+     * with global operations, so it must not access shared state.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if too much work is waiting already
+     */
+    void executeWork(Runnable runnable) {
+        workExecutorService.execute(runnable);
+    }
+
+    /**
+     * Runs a (short) task after the given number of milliseconds.
+     */
+    void schedule(Runnable runnable, long delay) {
+        scheduler.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public void runExclusively(Runnable runnable) {
+        Lock writeLock = lock.writeLock();
+        long startTime = System.nanoTime();
+        writeLock.lock();
+        LOCK_WAIT_TIME.get("exclusive").recordSince(startTime);
+        try {
+            runnable.run();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    static class ThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        ThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
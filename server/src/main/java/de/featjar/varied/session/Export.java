@@ -0,0 +1,93 @@
+package de.featjar.varied.session;
+
+import de.featjar.varied.api.Api;
+import de.featjar.varied.project.Artifact;
+import de.featjar.varied.util.FeatureModels;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Exports a feature model in some format in the background, so that printing a large feature model does not block
+ * the session. It works on a copy of the feature model (usually created from a {@link de.featjar.varied.util.ModelSnapshot}
+ * in the background as well), so the session may change in the meantime.
+ * An export is shared by all users that request the same format of the same state of the feature model, and it can
+ * be cancelled as long as it has not finished. Except for running the export itself, it is only accessed on the
+ * session's mailbox.
+ */
+class Export {
+    private final Artifact.Path artifactPath;
+    private final String format;
+
+    /**
+     * users waiting for the result
+     */
+    private final Set<User> users = new LinkedHashSet<>();
+    private volatile boolean isCancelled;
+    private volatile boolean isDone;
+    private volatile String data;
+    private volatile Throwable error;
+
+    /**
+     * Starts the export. When it is done, the given callback is called on an arbitrary thread, which should then
+     * call {@link #complete()} on the session's mailbox.
+     */
+    Export(Artifact.Path artifactPath, Supplier<de.featjar.model.FeatureModel> featureModelCopy, String format, Consumer<Export> onDone) {
+        this.artifactPath = artifactPath;
+        this.format = format;
+        Dispatcher.getInstance().executeWork(() -> {
+            try {
+                if (!isCancelled)
+                    data = FeatureModels.serialize(featureModelCopy.get(), format);
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                isDone = true;
+                onDone.accept(this);
+            }
+        });
+    }
+
+    boolean isSuccessful() {
+        return isDone && data != null;
+    }
+
+    /**
+     * Sends the result to the given user, right away if the export is done, otherwise when it is.
+     */
+    void request(User user) {
+        if (isSuccessful())
+            send(user);
+        else
+            users.add(user);
+    }
+
+    /**
+     * @return whether the export was cancelled, which happens when no other user is waiting for it anymore
+     */
+    boolean cancel(User user) {
+        users.remove(user);
+        if (users.isEmpty() && !isDone)
+            isCancelled = true;
+        return isCancelled;
+    }
+
+    void complete() {
+        if (!isCancelled)
+            users.forEach(this::send);
+        users.clear();
+    }
+
+    private void send(User user) {
+        if (error != null) {
+            user.send(new Api.Error(error));
+            return;
+        }
+        Api.ExportArtifact exportArtifactMessage = new Api.ExportArtifact(artifactPath);
+        exportArtifactMessage.format = format;
+        exportArtifactMessage.data = data;
+        user.send(exportArtifactMessage);
+    }
+}
@@ -0,0 +1,46 @@
+package de.featjar.varied.session;
+
+import de.featjar.varied.api.Message;
+import de.featjar.varied.metrics.Counter;
+import de.featjar.varied.metrics.Histogram;
+import de.featjar.varied.metrics.Metrics;
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs sent and received messages, which are too many under load to log each of them at the info level.
+ * At the debug level, every message is logged. At the info level, only every n-th message is logged.
+ * Log entries are written asynchronously (see tinylog.properties), so logging only costs formatting the entry.
+ */
+class MessageLog {
+    private static final int SAMPLING_INTERVAL = Integer.getInteger("varied.messageLogSampling", 100);
+    private static final Histogram LOG_TIME = Metrics.histogram("varied_message_log_seconds",
+            "time for logging a sent or received message");
+    private static final Counter SKIPPED_MESSAGES = Metrics.counter("varied_message_log_skipped_total",
+            "number of sent or received messages not logged due to sampling");
+    private static final AtomicLong messages = new AtomicLong();
+
+    static void sending(Message.Type type, User user) {
+        log("sending {} message to user {}", type, user);
+    }
+
+    static void received(Message.Type type, User user) {
+        log("received {} message from user {}", type, user);
+    }
+
+    private static void log(String format, Message.Type type, User user) {
+        long startTime = System.nanoTime();
+        Level level = Logger.getLevel();
+        if (level.compareTo(Level.DEBUG) <= 0)
+            Logger.debug(format, type, user);
+        else if (level == Level.INFO && SAMPLING_INTERVAL > 0 && messages.getAndIncrement() % SAMPLING_INTERVAL == 0)
+            Logger.info(format + " (logging every {}th message)", type, user, SAMPLING_INTERVAL);
+        else {
+            SKIPPED_MESSAGES.increment();
+            return;
+        }
+        LOG_TIME.recordSince(startTime);
+    }
+}
@@ -1,22 +1,42 @@
 package de.featjar.varied.session;
 
-import de.featjar.model.Feature;
+import com.google.gson.JsonObject;
 import de.featjar.varied.api.Api;
+import de.featjar.varied.api.EncodedMessage;
 import de.featjar.varied.api.Message;
 import de.featjar.varied.api.Payload;
+import de.featjar.varied.metrics.Histogram;
+import de.featjar.varied.metrics.Metrics;
+import de.featjar.varied.persistence.ArtifactStore;
+import de.featjar.varied.persistence.OperationRecord;
 import de.featjar.varied.project.Artifact;
+import de.featjar.varied.util.FeatureIndex;
+import de.featjar.varied.util.ModelSnapshot;
+import de.featjar.varied.util.SerialExecutor;
 import de.featjar.varied.util.Users;
 import de.featjar.varied.util.FeatureModels;
 import org.pmw.tinylog.Logger;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * A session consists of a set of users that view and edit a artifact together.
+ * All joins, leaves and messages of a session are processed one at a time on the session's mailbox (see
+ * {@link #submit(User, Task)}), so implementations need not synchronize access to their artifact.
  */
 public abstract class Session {
+    private static final Histogram QUEUE_WAIT_TIME = Metrics.histogram("varied_session_queue_wait_seconds",
+            "time tasks wait in a session's mailbox before they run");
+
     protected Artifact.Path artifactPath;
-    protected Set<User> users = new HashSet<>();
+    protected Set<User> users = ConcurrentHashMap.newKeySet();
+    private final SerialExecutor executor = Dispatcher.getInstance().newSessionExecutor();
+    private volatile long lastAccessTime = System.currentTimeMillis();
+    private volatile boolean isUnloaded;
 
     Session(Artifact.Path artifactPath) {
         this.artifactPath = artifactPath;
@@ -32,10 +52,93 @@ public abstract class Session {
 
     protected abstract boolean _onMessage(User user, Message.IDecodable message);
 
+    protected abstract void _resync(User user);
+
+    protected abstract void _prepareUnload();
+
+    protected abstract boolean _unload();
+
+    /**
+     * @return estimated number of bytes this session occupies on the heap
+     */
+    public abstract long getResidentSize();
+
+    /**
+     * Schedules a task on this session's mailbox. Errors are reported to the given user.
+     */
+    void submit(User user, Task task) {
+        lastAccessTime = System.currentTimeMillis();
+        long submitTime = System.nanoTime();
+        executor.execute(() -> {
+            QUEUE_WAIT_TIME.recordSince(submitTime);
+            try {
+                task.run();
+            } catch (Throwable t) {
+                user.send(new Api.Error(t));
+            }
+        });
+    }
+
+    /**
+     * Schedules a task on this session's mailbox, which is not related to any user.
+     */
+    void execute(Runnable runnable) {
+        executor.execute(() -> {
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                Logger.error(t);
+            }
+        });
+    }
+
+    /**
+     * Schedules a task on this session's mailbox after the given number of milliseconds.
+     */
+    void schedule(Runnable runnable, long delay) {
+        Dispatcher.getInstance().schedule(() -> execute(runnable), delay);
+    }
+
     public boolean isInProcess() {
         return users.size() > 0;
     }
 
+    public int getQueueSize() {
+        return executor.getQueueSize();
+    }
+
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    /**
+     * Persists this session's state on its mailbox, so that {@link #unload()} only has to check and detach the
+     * session while all other sessions wait.
+     */
+    public CompletableFuture<Void> prepareUnload() {
+        return CompletableFuture.runAsync(this::_prepareUnload, executor);
+    }
+
+    /**
+     * Prepares this session for being unloaded from memory, which requires that no user is in it and no task is
+     * waiting. Tasks that are still submitted to an unloaded session must be redirected to the artifact's new session.
+     * This should only be called while running exclusively (see {@link Dispatcher#runExclusively(Runnable)}).
+     *
+     * @return whether the session was unloaded, which fails if this would lose state (e.g., if it changed since
+     * {@link #prepareUnload()})
+     */
+    public boolean unload() {
+        if (isInProcess() || !executor.isIdle() || !_unload())
+            return false;
+        Logger.info("unloading session {}", this);
+        isUnloaded = true;
+        return true;
+    }
+
+    public boolean isUnloaded() {
+        return isUnloaded;
+    }
+
     public Artifact.Path getArtifactPath() {
         return artifactPath;
     }
@@ -61,60 +164,427 @@ public abstract class Session {
         Users.broadcastToOthers(users, new Api.UserLeft(artifactPath, oldUser), oldUser);
     }
 
+    /**
+     * Sends the current state of the artifact again to a user that has missed some updates.
+     */
+    void resync(User user) {
+        submit(user, () -> {
+            if (users.contains(user))
+                _resync(user);
+        });
+    }
+
     public void onMessage(User user, Message message) throws Message.InvalidMessageException {
         if (!_onMessage(user, (Message.IDecodable) message))
             throw new Message.InvalidMessageException("message can not be processed");
     }
 
+    interface Task {
+        void run() throws Exception;
+    }
+
     public static class FeatureModel extends Session {
-        protected final de.featjar.model.FeatureModel featureModel;
+        private static final int SNAPSHOT_INTERVAL = Integer.getInteger("varied.snapshotInterval", 100);
+        private static final long BROADCAST_INTERVAL = Long.getLong("varied.broadcastInterval", 20);
+        private static final int BROADCAST_MAX_CHANGES = Integer.getInteger("varied.broadcastMaxChanges", 50);
+
+        protected de.featjar.model.FeatureModel featureModel;
+
+        /**
+         * resolves feature IDs, all changes to the feature tree go through it
+         */
+        private FeatureIndex featureIndex;
+
+        /**
+         * persists operations, null if persistence is disabled
+         */
+        private final ArtifactStore store;
+
+        /**
+         * incremented with every change to the feature model, allows users to detect missed patches
+         */
+        private long version;
+
+        /**
+         * structure of the current version's payload, which the next patch is computed against
+         */
+        private Payload.Index index;
+
+        /**
+         * features that changed since the last patch (see {@link FeatureIndex#takeChangedFeatures()})
+         */
+        private final Set<de.featjar.model.Feature> unflushedFeatures = new LinkedHashSet<>();
+
+        /**
+         * artifact data of the current version, encoded once and shared by all users that request it
+         */
+        private EncodedMessage artifactData;
+
+        private volatile long residentSize;
+
+        /**
+         * incremented with every operation (unlike the version, which is incremented with every broadcast patch)
+         */
+        private long revision;
+
+        /**
+         * immutable snapshot of the current revision, which may be read on any thread,
+         * null if the feature model contains formulas that snapshots can not represent
+         */
+        private volatile ModelSnapshot snapshot;
+        private boolean canSnapshot = true;
+
+        /**
+         * number of changes not broadcast yet, they are merged into one patch when the scheduled flush runs
+         */
+        private int pendingChanges;
+        private boolean isFlushScheduled;
+
+        /**
+         * exports of the current state of the feature model by format, shared by all users that request them
+         */
+        private final Map<String, Export> exports = new HashMap<>();
+
+        /**
+         * number of exports that have not called back yet, including those of previous states
+         */
+        private int runningExports;
 
-        public FeatureModel(Artifact.Path artifactPath, de.featjar.model.FeatureModel featureModel) {
+        private final AnalysisScheduler analysisScheduler = new AnalysisScheduler(this);
+
+        /**
+         * Creates a session for a feature model. If the store has a snapshot, the feature model is expected to be
+         * loaded from it, and the operations logged since are applied to it.
+         */
+        public FeatureModel(Artifact.Path artifactPath, de.featjar.model.FeatureModel featureModel, ArtifactStore store) {
             super(artifactPath);
             this.featureModel = featureModel;
             Objects.requireNonNull(featureModel, "no initial feature model given");
+            this.featureIndex = new FeatureIndex(featureModel);
+            this.store = store;
+            if (store != null) {
+                if (store.hasSnapshot()) {
+                    List<JsonObject> records = store.readLog();
+                    Logger.info("replaying {} operations for session {}", records.size(), this);
+                    for (JsonObject record : records)
+                        for (JsonObject operationRecord : OperationRecord.getRecords(record))
+                            apply(OperationRecord.toMessage(featureModel, operationRecord));
+                } else
+                    store.writeSnapshot(featureModel);
+            }
+            publishSnapshot(null);
+            resetIndex();
+        }
+
+        /**
+         * Publishes a snapshot of the feature model after it changed. Only features that changed since the given
+         * previous snapshot (and their ancestors) are copied, all others are shared with it.
+         */
+        private void publishSnapshot(ModelSnapshot previous) {
+            Set<de.featjar.model.Feature> changedFeatures = featureIndex.takeChangedFeatures();
+            unflushedFeatures.addAll(changedFeatures);
+            revision++;
+            if (!canSnapshot)
+                return;
+            try {
+                snapshot = previous != null
+                        ? previous.update(featureModel, changedFeatures, revision)
+                        : ModelSnapshot.of(featureModel, revision);
+            } catch (UnsupportedOperationException e) {
+                Logger.warn("can not take snapshots in session {}, falling back to copies: {}", this, e.getMessage());
+                canSnapshot = false;
+                snapshot = null;
+            }
+        }
+
+        /**
+         * @return an immutable snapshot of the feature model's latest revision, which can be read on any thread,
+         * null if the feature model can not be represented as a snapshot
+         */
+        public ModelSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * Indexes the whole feature model, so the next patch only contains later changes.
+         */
+        private void resetIndex() {
+            index = Payload.toIndex(featureModel);
+            unflushedFeatures.clear();
+            updateResidentSize();
+        }
+
+        private void updateResidentSize() {
+            // the feature model is assumed to take about four bytes per character of its encoded payload
+            residentSize = 4 * index.getEncodedLength();
+        }
+
+        public long getResidentSize() {
+            return residentSize;
+        }
+
+        protected boolean _unload() {
+            // without persistence, changes would be lost when reloading the feature model
+            if (pendingChanges > 0 || runningExports > 0)
+                return false;
+            if (store == null)
+                return version == 0;
+            // the snapshot is written by _prepareUnload, as writing it here would block all sessions
+            if (store.getRecordsSinceSnapshot() > 0)
+                return false;
+            store.close();
+            return true;
+        }
+
+        protected void _prepareUnload() {
+            if (store != null && store.getRecordsSinceSnapshot() > 0)
+                store.writeSnapshot(featureModel);
         }
 
         public de.featjar.model.FeatureModel getFeatureModel() {
             return featureModel;
         }
 
+        public long getVersion() {
+            return version;
+        }
+
         protected boolean _onMessage(User user, Message.IDecodable message) {
+            if (message instanceof Api.ArtifactDataRequest) {
+                _resync(user);
+                return true;
+            }
+
             if (message instanceof Api.ExportArtifact) {
-                Api.ExportArtifact exportArtifactMessage = (Api.ExportArtifact) message;
-                exportArtifactMessage.data = FeatureModels.serialize(getFeatureModel(), exportArtifactMessage.format);
-                user.send(exportArtifactMessage);
+                export(user, ((Api.ExportArtifact) message).format);
                 return true;
             }
 
-            if (message instanceof Api.OperationFeatureCreateBelow) {
-                String featureParentID = ((Api.OperationFeatureCreateBelow) message).featureParentID;
-                Feature feature = featureModel.getFeature(featureModel.getIdentifier().getFactory().parse(featureParentID)).orElseThrow();
-                feature.mutate().createFeatureBelow();
-                Users.broadcast(users, getArtifactData());
+            if (message instanceof Api.ExportArtifactCancel) {
+                cancelExport(user, ((Api.ExportArtifactCancel) message).format);
+                return true;
+            }
+
+            if (message instanceof Api.AnalysisVoidModel || message instanceof Api.FeatureAnalysis) {
+                analysisScheduler.submit(user, message);
                 return true;
             }
 
-            if (message instanceof Api.OperationFeatureRemove) {
-                Arrays.stream(((Api.OperationFeatureRemove) message).featureIDs)
-                        .map(featureID -> featureModel.getFeature(featureModel.getIdentifier().getFactory().parse(featureID)).orElseThrow())
-                        .forEach(feature -> feature.mutate().remove());
-                Users.broadcast(users, getArtifactData());
+            if (OperationRecord.isOperation(message)) {
+                // the record has to be created before the operation changes the feature tree
+                JsonObject record = store != null ? OperationRecord.toRecord(featureIndex, message) : null;
+                apply(message);
+                publishSnapshot(snapshot);
+                if (store != null)
+                    log(record);
+                onChanged();
+                return true;
+            }
+
+            if (message instanceof Api.OperationBatch) {
+                applyBatch(((Api.OperationBatch) message).operations);
+                publishSnapshot(snapshot);
+                onChanged();
                 return true;
             }
 
             return false;
         }
 
+        /**
+         * Applies operations atomically. All operations are checked before any is applied, so that a rejected batch
+         * leaves the feature model (and the identifiers other users refer to) untouched.
+         * Only if an operation fails anyway, the feature model is restored from the snapshot taken before (or a copy,
+         * if there is none). As the restored features have new identifiers, all users are then sent the restored
+         * artifact data.
+         */
+        private void applyBatch(Message[] operations) {
+            if (operations == null || operations.length == 0)
+                throw new RuntimeException("no operations given in batch");
+            for (Message operation : operations)
+                if (!OperationRecord.isOperation((Message.IDecodable) operation))
+                    throw new RuntimeException("invalid operation " + operation.getType() + " in batch");
+            checkBatch(operations);
+
+            ModelSnapshot backup = snapshot;
+            de.featjar.model.FeatureModel backupCopy = backup == null ? FeatureModels.copy(featureModel) : null;
+            List<JsonObject> records = new ArrayList<>();
+            try {
+                for (Message operation : operations) {
+                    // each record has to be created right before its operation changes the feature tree
+                    if (store != null)
+                        records.add(OperationRecord.toRecord(featureIndex, (Message.IDecodable) operation));
+                    apply((Message.IDecodable) operation);
+                }
+            } catch (RuntimeException e) {
+                Logger.error("rolling back batch of {} operations in session {}, which passed its check", operations.length, this);
+                featureModel = backup != null ? backup.toFeatureModel() : backupCopy;
+                featureIndex = new FeatureIndex(featureModel);
+                exports.clear();
+                publishSnapshot(null);
+                resetIndex();
+                pendingChanges = 0;
+                incrementVersion();
+                users.forEach(this::_resync);
+                throw e;
+            }
+            if (store != null)
+                log(OperationRecord.toBatchRecord(records));
+        }
+
+        /**
+         * Resolves every feature ID of a batch once and rejects operations on features that an earlier operation
+         * in the batch removes. Features created in the batch can not be referred to, as their IDs are not known yet.
+         */
+        private void checkBatch(Message[] operations) {
+            Set<de.featjar.model.Feature> removedFeatures = new HashSet<>();
+            for (Message operation : operations) {
+                List<de.featjar.model.Feature> features;
+                if (operation instanceof Api.OperationFeatureCreateBelow)
+                    features = List.of(featureIndex.getFeature(((Api.OperationFeatureCreateBelow) operation).featureParentID));
+                else {
+                    String[] featureIDs = ((Api.OperationFeatureRemove) operation).featureIDs;
+                    if (featureIDs == null)
+                        throw new RuntimeException("no features given to remove");
+                    features = featureIndex.getFeatures(featureIDs);
+                }
+                for (de.featjar.model.Feature feature : features)
+                    if (removedFeatures.contains(feature))
+                        throw new RuntimeException("feature " + feature.getIdentifier() + " is removed earlier in the batch");
+                if (operation instanceof Api.OperationFeatureRemove) {
+                    features.forEach(featureIndex::checkRemovable);
+                    removedFeatures.addAll(features);
+                }
+            }
+        }
+
+        private void export(User user, String format) {
+            if (format == null)
+                throw new RuntimeException("no format given");
+            Export export = exports.get(format);
+            if (export == null) {
+                // the snapshot is turned into a copy in the background, only without a snapshot the session copies
+                ModelSnapshot snapshot = this.snapshot;
+                Supplier<de.featjar.model.FeatureModel> featureModelCopy;
+                if (snapshot != null)
+                    featureModelCopy = snapshot::toFeatureModel;
+                else {
+                    de.featjar.model.FeatureModel copy = FeatureModels.copy(featureModel);
+                    featureModelCopy = () -> copy;
+                }
+                export = new Export(artifactPath, featureModelCopy, format, done -> execute(() -> onExported(done)));
+                runningExports++;
+                exports.put(format, export);
+            }
+            export.request(user);
+        }
+
+        private void onExported(Export export) {
+            runningExports--;
+            export.complete();
+            // failed exports are not cached, so they can be retried
+            if (!export.isSuccessful())
+                exports.values().remove(export);
+        }
+
+        private void cancelExport(User user, String format) {
+            Export export = exports.get(format);
+            if (export != null && export.cancel(user))
+                exports.remove(format);
+        }
+
+        private void cancelExports(User user) {
+            exports.values().removeIf(export -> export.cancel(user));
+        }
+
+        /**
+         * Sends the result of an analysis (see {@link AnalysisScheduler}), unless it is outdated.
+         */
+        void onAnalyzed(User user, Message.IDecodable message, ModelSnapshot snapshot,
+                        Function<Long, Message.IEncodable> response) {
+            if (!users.contains(user))
+                return;
+            // the feature model changed after the analysis, so it is repeated
+            if (snapshot.getRevision() != revision) {
+                analysisScheduler.submit(user, message);
+                return;
+            }
+            // the user has to receive the analyzed version before the result
+            flush(null);
+            user.send(response.apply(version));
+        }
+
+        private void apply(Message.IDecodable message) {
+            // running exports are not affected, but later requests should see the changes
+            exports.clear();
+            if (message instanceof Api.OperationFeatureCreateBelow) {
+                String featureParentID = ((Api.OperationFeatureCreateBelow) message).featureParentID;
+                featureIndex.createFeatureBelow(featureIndex.getFeature(featureParentID));
+            }
+
+            if (message instanceof Api.OperationFeatureRemove)
+                featureIndex.remove(featureIndex.getFeatures(((Api.OperationFeatureRemove) message).featureIDs));
+        }
+
+        private void log(JsonObject record) {
+            store.append(record);
+            if (store.getRecordsSinceSnapshot() >= SNAPSHOT_INTERVAL)
+                store.writeSnapshot(featureModel);
+        }
+
         protected void _join(User newUser) {
-            newUser.send(getArtifactData());
+            _resync(newUser);
+        }
+
+        protected void _resync(User user) {
+            // the user receives the current artifact data, so it does not need the pending patch
+            flush(user);
+            user.send(getArtifactData());
+        }
+
+        private EncodedMessage getArtifactData() {
+            if (artifactData == null)
+                artifactData = new EncodedMessage(new Api.ArtifactData(artifactPath, version, featureModel));
+            return artifactData;
+        }
+
+        private void incrementVersion() {
+            version++;
+            artifactData = null;
+        }
+
+        /**
+         * Broadcasts changes at most every few milliseconds, so that bursts of operations cause only one patch.
+         * The flush is scheduled with the first change and not postponed by further changes, so no change is
+         * delayed longer than the broadcast interval.
+         */
+        private void onChanged() {
+            pendingChanges++;
+            if (BROADCAST_INTERVAL <= 0 || pendingChanges >= BROADCAST_MAX_CHANGES)
+                flush(null);
+            else if (!isFlushScheduled) {
+                isFlushScheduled = true;
+                schedule(() -> {
+                    isFlushScheduled = false;
+                    flush(null);
+                }, BROADCAST_INTERVAL);
+            }
         }
 
-        private Api.ArtifactData getArtifactData() {
-            return new Api.ArtifactData(artifactPath, Payload.fromFeatureModel(featureModel));
+        private void flush(User excludedUser) {
+            if (pendingChanges == 0)
+                return;
+            pendingChanges = 0;
+            JsonObject patch = Payload.updateIndex(index, featureModel, unflushedFeatures);
+            unflushedFeatures.clear();
+            updateResidentSize();
+            incrementVersion();
+            Users.broadcast(users, new Api.ArtifactDataPatch(artifactPath, version, patch), user -> user != excludedUser);
         }
 
         protected void _leave(User oldUser) {
+            cancelExports(oldUser);
+            analysisScheduler.cancel(oldUser);
         }
     }
 }
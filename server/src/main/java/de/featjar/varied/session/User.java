@@ -4,7 +4,13 @@ import com.google.gson.annotations.Expose;
 import de.featjar.varied.Main;
 import de.featjar.varied.Socket;
 import de.featjar.varied.api.Api;
+import de.featjar.varied.api.EncodedMessage;
 import de.featjar.varied.api.Message;
+import de.featjar.varied.metrics.Counter;
+import de.featjar.varied.metrics.Family;
+import de.featjar.varied.metrics.Histogram;
+import de.featjar.varied.metrics.Metrics;
+import de.featjar.varied.persistence.Persistence;
 import de.featjar.varied.project.Artifact;
 import de.featjar.varied.project.Project;
 import de.featjar.varied.project.ProjectManager;
@@ -13,6 +19,9 @@ import me.atrox.haikunator.Haikunator;
 import org.pmw.tinylog.Logger;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -21,13 +30,41 @@ public class User {
     private UUID userID;
 
     @Expose
-    private String name;
+    private volatile String name;
+
+    /**
+     * What to do when a user does not receive messages as fast as they are sent,
+     * that is, when the user's outgoing queue reaches its capacity.
+     */
+    public enum OverflowPolicy {
+        // drop queued artifact data and patches, then send the current artifact data instead
+        // (if this does not free any space, the user is disconnected)
+        DROP_ARTIFACT_DATA,
+        // close the user's socket, the client reconnects and starts over
+        DISCONNECT
+    }
+
+    private static final int OUTGOING_QUEUE_CAPACITY = Integer.getInteger("varied.outgoingQueueCapacity", 256);
+    private static final OverflowPolicy OVERFLOW_POLICY =
+            OverflowPolicy.valueOf(System.getProperty("varied.overflowPolicy", OverflowPolicy.DROP_ARTIFACT_DATA.name()));
 
     private Socket socket;
-    private final Queue<Message.IEncodable> outgoingQueue = new LinkedList<>();
+    // cleared when the socket closes, so that joins still pending then do not leave the user in sessions
+    private boolean isConnected = true;
+    private final LinkedList<EncodedMessage> outgoingQueue = new LinkedList<>();
+    // the head of the outgoing queue is being sent asynchronously, it is removed when sending succeeds
+    private boolean isSending;
+
+    private static final Counter DROPPED_MESSAGES = Metrics.counter("varied_dropped_messages_total",
+            "number of messages dropped because a user's outgoing queue was full");
+    private static final Counter COALESCED_MESSAGES = Metrics.counter("varied_coalesced_messages_total",
+            "number of queued messages superseded by newer artifact data");
+    private static final Family<Histogram> HANDLER_TIME = Metrics.histogram("varied_handler_seconds",
+            "time for handling a message in a session", "type");
 
     private static final Haikunator haikunator = new Haikunator().setDelimiter(" ").setTokenLength(0);
-    private final Set<Session> sessions = new HashSet<>();
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private CompletableFuture<Void> pendingMessages = CompletableFuture.completedFuture(null);
 
     private static String capitalize(final String words) {
         return Stream.of(words.trim().split("\\s"))
@@ -37,7 +74,9 @@ public class User {
     }
 
     private static String generateName() {
-        return capitalize(haikunator.haikunate());
+        synchronized (haikunator) {
+            return capitalize(haikunator.haikunate());
+        }
     }
 
     User(UUID userID, Socket socket) {
@@ -50,28 +89,118 @@ public class User {
         this.socket = socket;
     }
 
-    private void _send(Message.IEncodable message) throws Socket.SendException {
-        Logger.info("sending {} message to user {}", ((Message) message).getType(), this);
-        socket.send(message);
+    // the outgoing queue is synchronized per user, as sessions may send to the same user concurrently
+    synchronized void sendPending() {
+        if (isSending || outgoingQueue.isEmpty())
+            return;
+        EncodedMessage encodedMessage = outgoingQueue.peek();
+        MessageLog.sending(encodedMessage.getMessage().getType(), this);
+        Socket socket = this.socket;
+        isSending = true;
+        socket.send(encodedMessage, isOk -> onSent(socket, isOk));
     }
 
-    void sendPending() {
-        while (outgoingQueue.peek() != null) {
-            Message.IEncodable message = outgoingQueue.peek();
-            try {
-                _send(message);
-            } catch (Socket.SendException e) {
-                return;
-            }
+    private synchronized void onSent(Socket socket, boolean isOk) {
+        // if the socket has been replaced meanwhile, the message is sent again over the new socket
+        if (socket != this.socket)
+            return;
+        isSending = false;
+        // if sending failed, the message is kept until the user reconnects
+        if (isOk) {
             outgoingQueue.remove();
+            sendPending();
         }
     }
 
     public void send(Message.IEncodable message) {
-        outgoingQueue.add(message);
+        send(new EncodedMessage(message));
+    }
+
+    public synchronized void send(EncodedMessage encodedMessage) {
+        if (!coalesce(encodedMessage)) {
+            if (outgoingQueue.size() >= OUTGOING_QUEUE_CAPACITY && !onOverflow())
+                return;
+            outgoingQueue.add(encodedMessage);
+        }
         sendPending();
     }
 
+    private static boolean isArtifactData(Message message) {
+        return message.isType(Api.TypeEnum.ARTIFACT_DATA) || message.isType(Api.TypeEnum.ARTIFACT_DATA_PATCH);
+    }
+
+    /**
+     * Artifact data supersedes all queued artifact data and patches for the same artifact, so only the newest
+     * artifact data has to be sent (e.g., when a user reconnects after a long time). It takes the place of the
+     * first superseded message to keep its order relative to other messages (e.g., users joining the session).
+     *
+     * @return whether the artifact data replaced a queued message
+     */
+    private boolean coalesce(EncodedMessage encodedMessage) {
+        Message message = encodedMessage.getMessage();
+        if (!message.isType(Api.TypeEnum.ARTIFACT_DATA))
+            return false;
+        boolean isReplaced = false;
+        ListIterator<EncodedMessage> iterator = outgoingQueue.listIterator();
+        if (isSending && iterator.hasNext())
+            iterator.next();
+        while (iterator.hasNext()) {
+            Message queuedMessage = iterator.next().getMessage();
+            if (isArtifactData(queuedMessage) && message.getArtifactPath().equals(queuedMessage.getArtifactPath())) {
+                if (isReplaced)
+                    iterator.remove();
+                else
+                    iterator.set(encodedMessage);
+                isReplaced = true;
+                COALESCED_MESSAGES.increment();
+            }
+        }
+        return isReplaced;
+    }
+
+    /**
+     * Applies the overflow policy to a full outgoing queue.
+     *
+     * @return whether there is space for another message
+     */
+    private boolean onOverflow() {
+        if (OVERFLOW_POLICY == OverflowPolicy.DROP_ARTIFACT_DATA) {
+            Set<Artifact.Path> artifactPaths = new HashSet<>();
+            Iterator<EncodedMessage> iterator = outgoingQueue.iterator();
+            if (isSending && iterator.hasNext())
+                iterator.next();
+            while (iterator.hasNext()) {
+                Message message = iterator.next().getMessage();
+                if (isArtifactData(message)) {
+                    artifactPaths.add(message.getArtifactPath());
+                    iterator.remove();
+                    DROPPED_MESSAGES.increment();
+                }
+            }
+            if (!artifactPaths.isEmpty()) {
+                Logger.warn("outgoing queue of user {} is full, dropped artifact data for {}", this, artifactPaths);
+                for (Session session : sessions)
+                    if (artifactPaths.contains(session.getArtifactPath()))
+                        session.resync(this);
+                return true;
+            }
+        }
+
+        Logger.warn("outgoing queue of user {} is full, disconnecting", this);
+        // the message being sent is kept, so it is removed as usual when sending completes
+        EncodedMessage sendingMessage = isSending ? outgoingQueue.peek() : null;
+        DROPPED_MESSAGES.add(outgoingQueue.size() - (sendingMessage != null ? 1 : 0));
+        outgoingQueue.clear();
+        if (sendingMessage != null)
+            outgoingQueue.add(sendingMessage);
+        socket.close();
+        return false;
+    }
+
+    public synchronized int getOutgoingQueueSize() {
+        return outgoingQueue.size();
+    }
+
     void sendInitialInformation() {
         Logger.info("sending initial information to user {}", this);
         send(new Api.UserJoined(null, this));
@@ -95,18 +224,23 @@ public class User {
         return getUserID().toString();
     }
 
-    public void setSocket(Socket socket) {
+    public synchronized void setSocket(Socket socket) {
         this.socket = socket;
+        isSending = false;
+        isConnected = true;
     }
 
     void onMessage(Message message) throws Message.InvalidMessageException {
         Objects.requireNonNull(message, "no message given");
-        Logger.info("received {} message from user {}", message.getType(), this);
+        MessageLog.received(message.getType(), this);
 
         if (message.isType(Api.TypeEnum.RESET)) {
             Logger.info("resetting server");
-            ProjectManager.getInstance().resetInstance();
-            UserManager.getInstance().resetInstance();
+            Dispatcher.getInstance().runExclusively(() -> {
+                Persistence.getInstance().clear();
+                ProjectManager.getInstance().resetInstance();
+                UserManager.getInstance().resetInstance();
+            });
             return;
         }
 
@@ -128,65 +262,122 @@ public class User {
 
         if (message.isType(Api.TypeEnum.ADD_ARTIFACT)) {
             Logger.info("adding new artifact {}", artifactPath);
-            if (ProjectManager.getInstance().getArtifact(artifactPath) != null)
-                throw new RuntimeException("artifact for path " + artifactPath + " already exists");
-            Project project = ProjectManager.getInstance().getProject(artifactPath);
-            if (project == null) {
-                String projectName = artifactPath.getProjectName();
-                Logger.info("adding new project {}", projectName);
-                project = new Project(projectName);
-                ProjectManager.getInstance().addProject(project);
-            }
-            String source = ((Api.AddArtifact) message).source;
-            Artifact artifact;
-            if (source == null)
-                artifact = new Artifact.FeatureModel(project, artifactPath.getArtifactName(),
-                        Main.getResourceURL("examples/" + ProjectManager.EMPTY + ".xml").orElseThrow());
-            else
-                artifact = new Artifact.FeatureModel(project, artifactPath.getArtifactName(), source);
-            project.addArtifact(artifact);
-            UserManager.getInstance().broadcast(new Api.AddArtifact(List.of(artifactPath)));
+            Dispatcher.getInstance().runExclusively(() -> addArtifact(artifactPath, ((Api.AddArtifact) message).source));
             return;
         }
 
         if (message.isType(Api.TypeEnum.REMOVE_ARTIFACT)) {
             Logger.info("removing artifact {}", artifactPath);
-            Artifact artifact = ProjectManager.getInstance().getArtifact(artifactPath);
-            if (artifact == null)
-                throw new RuntimeException("no artifact found for path " + artifactPath);
-            if (artifact.getSession().isInProcess())
-                throw new RuntimeException("session for artifact is still in process");
-            ProjectManager.getInstance().getProject(artifactPath).removeArtifact(artifact);
-            UserManager.getInstance().broadcast(new Api.RemoveArtifact(artifactPath));
+            Dispatcher.getInstance().runExclusively(() -> removeArtifact(artifactPath));
             return;
         }
 
         Artifact artifact = ProjectManager.getInstance().getArtifact(artifactPath);
         if (artifact == null)
             throw new Message.InvalidMessageException("no artifact found for path " + artifactPath);
-        Session session = artifact.getSession();
-        Logger.debug("message concerns session {}", session);
+        dispatch(artifact, message);
+    }
 
-        if (message.isType(Api.TypeEnum.JOIN_REQUEST) || message.isType(Api.TypeEnum.LEAVE_REQUEST)) {
-            if (message.isType(Api.TypeEnum.JOIN_REQUEST))
-                join(session);
-            if (message.isType(Api.TypeEnum.LEAVE_REQUEST))
-                leave(session);
-            return;
+    private void dispatch(Artifact artifact, Message message) {
+        // the session may have to be loaded first (e.g., from a remote URL), which must not block the socket,
+        // but the user's messages are still submitted in the order they were received
+        CompletableFuture<Session> sessionFuture = artifact.getSessionAsync();
+        synchronized (this) {
+            pendingMessages = pendingMessages.thenCompose(_void -> sessionFuture.handle((session, throwable) -> {
+                if (throwable != null)
+                    send(new Api.Error(throwable instanceof CompletionException ? throwable.getCause() : throwable));
+                else
+                    onSessionMessage(artifact, session, message);
+                return null;
+            }));
         }
+    }
 
-        for (Session _Session : sessions)
-            if (_Session == session) {
-                session.onMessage(this, message);
+    private void onSessionMessage(Artifact artifact, Session session, Message message) {
+        Logger.debug("message concerns session {}", session);
+        session.submit(this, () -> {
+            // the session may have been unloaded after this message was dispatched to it
+            if (session.isUnloaded()) {
+                dispatch(artifact, message);
                 return;
             }
 
-        throw new Message.InvalidMessageException("did not join session for given artifact path");
+            long startTime = System.nanoTime();
+            try {
+                onSessionMessage(session, message);
+            } finally {
+                HANDLER_TIME.get(message.getType()).recordSince(startTime);
+            }
+        });
+    }
+
+    private void onSessionMessage(Session session, Message message) throws Message.InvalidMessageException {
+        if (message.isType(Api.TypeEnum.JOIN_REQUEST)) {
+            join(session);
+            return;
+        }
+
+        if (message.isType(Api.TypeEnum.LEAVE_REQUEST)) {
+            leave(session);
+            return;
+        }
+
+        if (!sessions.contains(session))
+            throw new Message.InvalidMessageException("did not join session for given artifact path");
+        session.onMessage(this, message);
+    }
+
+    private void addArtifact(Artifact.Path artifactPath, String source) {
+        if (ProjectManager.getInstance().getArtifact(artifactPath) != null)
+            throw new RuntimeException("artifact for path " + artifactPath + " already exists");
+        Project project = ProjectManager.getInstance().getProject(artifactPath);
+        if (project == null) {
+            String projectName = artifactPath.getProjectName();
+            Logger.info("adding new project {}", projectName);
+            project = new Project(projectName);
+            ProjectManager.getInstance().addProject(project);
+        }
+        Artifact artifact;
+        if (source == null)
+            artifact = new Artifact.FeatureModel(project, artifactPath.getArtifactName(),
+                    Main.getResourceURL("examples/" + ProjectManager.EMPTY + ".xml").orElseThrow());
+        else
+            artifact = new Artifact.FeatureModel(project, artifactPath.getArtifactName(), source);
+        // creating the session persists the artifact, so that it is restored after a restart
+        if (Persistence.getInstance().isEnabled())
+            artifact.getSession();
+        project.addArtifact(artifact);
+        UserManager.getInstance().broadcast(new Api.AddArtifact(List.of(artifactPath)));
+    }
+
+    private void removeArtifact(Artifact.Path artifactPath) {
+        Artifact artifact = ProjectManager.getInstance().getArtifact(artifactPath);
+        if (artifact == null)
+            throw new RuntimeException("no artifact found for path " + artifactPath);
+        if (artifact.isInProcess())
+            throw new RuntimeException("session for artifact is still in process");
+        ProjectManager.getInstance().getProject(artifactPath).removeArtifact(artifact);
+        Persistence.getInstance().removeStore(artifact.getPath());
+        UserManager.getInstance().broadcast(new Api.RemoveArtifact(artifactPath));
     }
 
     private void join(Session session) {
-        session.join(this);
-        sessions.add(session);
+        // the session is added while checking the connection, so leaveAll either sees it or this sees the disconnect
+        boolean isAdded;
+        synchronized (this) {
+            if (!isConnected) {
+                Logger.info("{} disconnected before joining session {}", this, session);
+                return;
+            }
+            isAdded = sessions.add(session);
+        }
+        try {
+            session.join(this);
+        } catch (RuntimeException e) {
+            if (isAdded)
+                sessions.remove(session);
+            throw e;
+        }
     }
 
     private void leave(Session session) {
@@ -194,10 +385,18 @@ public class User {
         sessions.remove(session);
     }
 
+    /**
+     * Leaves all sessions after the socket closed. Joins that are still pending (e.g., waiting for their session to
+     * load) are not performed anymore, unless the user reconnects.
+     */
     public void leaveAll() {
-        for (Session session : sessions)
-            session.leave(this);
-        sessions.clear();
+        List<Session> joinedSessions;
+        synchronized (this) {
+            isConnected = false;
+            joinedSessions = new ArrayList<>(sessions);
+        }
+        for (Session session : joinedSessions)
+            session.submit(this, () -> leave(session));
     }
 
     private void broadcastUpdatedProfile() {
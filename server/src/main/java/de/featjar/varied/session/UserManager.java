@@ -2,6 +2,7 @@ package de.featjar.varied.session;
 
 import de.featjar.varied.Socket;
 import de.featjar.varied.api.Message;
+import de.featjar.varied.metrics.Metrics;
 import de.featjar.varied.util.Users;
 import org.pmw.tinylog.Logger;
 
@@ -15,9 +16,15 @@ public class UserManager {
     private final Map<UUID, User> users = new ConcurrentHashMap<>();
 
     private UserManager() {
+        Metrics.gauge("varied_users", "number of users that have connected", users::size);
+        Metrics.gauge("varied_outgoing_queue_size", "number of messages waiting to be sent to any user",
+                () -> users.values().stream().mapToInt(User::getOutgoingQueueSize).sum());
+        // users are not exported individually, as their IDs identify their sessions and /metrics is public
+        Metrics.gauge("varied_outgoing_queue_size_max", "number of messages waiting to be sent to the slowest user",
+                () -> users.values().stream().mapToInt(User::getOutgoingQueueSize).max().orElse(0));
     }
 
-    public static UserManager getInstance() {
+    public static synchronized UserManager getInstance() {
         return instance == null ? instance = new UserManager() : instance;
     }
 
@@ -26,15 +33,9 @@ public class UserManager {
     }
 
     public void register(Socket socket, UUID userID) {
-        User user;
-        if (users.containsKey(userID)) {
-            user = users.get(userID);
-            user.setSocket(socket);
-            user.sendPending();
-        } else {
-            user = new User(userID, socket);
-            users.put(userID, user);
-        }
+        User user = users.computeIfAbsent(userID, _userID -> new User(_userID, socket));
+        user.setSocket(socket);
+        user.sendPending();
         user.sendInitialInformation();
         Logger.info("registered user {}", userID);
     }
@@ -52,6 +53,19 @@ public class UserManager {
         Users.broadcast(users.values(), message);
     }
 
+    /**
+     * Sends a message to a user over their outgoing queue.
+     *
+     * @return whether the user is registered
+     */
+    public boolean send(UUID userID, Message.IEncodable message) {
+        User user = users.get(userID);
+        if (user == null)
+            return false;
+        user.send(message);
+        return true;
+    }
+
     public void onMessage(UUID userID, Message message) throws Message.InvalidMessageException {
         User user = users.get(userID);
         if (user != null)
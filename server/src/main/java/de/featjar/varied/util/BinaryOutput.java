@@ -0,0 +1,79 @@
+package de.featjar.varied.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes a compact binary encoding into a growing byte array.
+ * Integers are encoded as unsigned variable-length integers (7 bits per byte), strings as their length and UTF-8 bytes.
+ */
+public class BinaryOutput {
+    private byte[] bytes = new byte[1024];
+    private int size;
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, 2 * bytes.length));
+    }
+
+    public BinaryOutput writeByte(int value) {
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte) value;
+        return this;
+    }
+
+    public BinaryOutput writeVarInt(int value) {
+        if (value < 0)
+            throw new IllegalArgumentException("negative integers can not be encoded");
+        while (value >= 0x80) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        return writeByte(value);
+    }
+
+    /**
+     * Encodes signed integers with zigzag encoding, so that small negative integers take few bytes as well.
+     */
+    public BinaryOutput writeVarLong(long value) {
+        value = (value << 1) ^ (value >> 63);
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        return writeByte((int) value);
+    }
+
+    public BinaryOutput writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8)
+            writeByte((int) (bits >>> shift));
+        return this;
+    }
+
+    public BinaryOutput writeBytes(byte[] value, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(value, offset, bytes, size, length);
+        size += length;
+        return this;
+    }
+
+    public BinaryOutput writeString(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(encoded.length);
+        return writeBytes(encoded, 0, encoded.length);
+    }
+
+    public BinaryOutput write(BinaryOutput binaryOutput) {
+        return writeBytes(binaryOutput.bytes, 0, binaryOutput.size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, size);
+    }
+}
@@ -0,0 +1,112 @@
+package de.featjar.varied.util;
+
+import de.featjar.model.Feature;
+import de.featjar.model.FeatureModel;
+import de.featjar.model.FeatureTree;
+
+import java.util.*;
+
+/**
+ * Resolves the feature IDs sent to clients to the features of a feature model in constant time.
+ * The feature tree must only be changed through this index, so that it stays consistent.
+ * It also records which features changed, so that {@link ModelSnapshot}s only need to copy those.
+ */
+public class FeatureIndex {
+    private final FeatureModel featureModel;
+    private final Map<String, Feature> features = new HashMap<>();
+    private final Set<Feature> changedFeatures = new HashSet<>();
+
+    public FeatureIndex(FeatureModel featureModel) {
+        this.featureModel = featureModel;
+        addSubtree(featureModel.getFeatureTree());
+    }
+
+    private void addSubtree(FeatureTree featureTree) {
+        features.put(featureTree.getFeature().getIdentifier().toString(), featureTree.getFeature());
+        featureTree.getChildren().forEach(this::addSubtree);
+    }
+
+    private boolean isInFeatureTree(FeatureTree featureTree) {
+        while (featureTree.getParent().isPresent())
+            featureTree = featureTree.getParent().get();
+        return featureTree == featureModel.getFeatureTree();
+    }
+
+    public Feature getFeature(String featureID) {
+        Feature feature = features.get(featureID);
+        if (feature == null)
+            throw new RuntimeException("no feature found for ID " + featureID);
+        return feature;
+    }
+
+    public FeatureTree getFeatureTree(String featureID) {
+        return getFeature(featureID).getFeatureTree();
+    }
+
+    /**
+     * Resolves all given IDs before returning, so that bulk operations fail before changing anything.
+     */
+    public List<Feature> getFeatures(String[] featureIDs) {
+        Set<Feature> features = new LinkedHashSet<>();
+        for (String featureID : featureIDs)
+            features.add(getFeature(featureID));
+        return new ArrayList<>(features);
+    }
+
+    /**
+     * @return features whose attributes, parent or children changed since this was last called
+     */
+    public Set<Feature> takeChangedFeatures() {
+        Set<Feature> changedFeatures = new HashSet<>(this.changedFeatures);
+        this.changedFeatures.clear();
+        return changedFeatures;
+    }
+
+    public Feature createFeatureBelow(Feature parent) {
+        Feature feature = parent.mutate().createFeatureBelow();
+        features.put(feature.getIdentifier().toString(), feature);
+        changedFeatures.add(parent);
+        return feature;
+    }
+
+    /**
+     * @throws RuntimeException if the feature can not be removed, that is, it is the root feature
+     */
+    public void checkRemovable(Feature feature) {
+        if (!feature.getFeatureTree().hasParent())
+            throw new RuntimeException("can not remove root feature " + feature.getIdentifier());
+    }
+
+    public void remove(Feature feature) {
+        checkRemovable(feature);
+        feature.getFeatureTree().getParent().ifPresent(parent -> changedFeatures.add(parent.getFeature()));
+        List<FeatureTree> children = new ArrayList<>(feature.getFeatureTree().getChildren());
+        List<FeatureTree> descendants = new ArrayList<>();
+        collectDescendants(feature.getFeatureTree(), descendants);
+        feature.mutate().remove();
+        features.remove(feature.getIdentifier().toString());
+        // children are usually moved up to the parent, but are removed with the feature otherwise
+        for (FeatureTree descendant : descendants)
+            if (!isInFeatureTree(descendant))
+                features.remove(descendant.getFeature().getIdentifier().toString());
+        // moved children have a new parent, which clients are told about
+        for (FeatureTree child : children)
+            if (isInFeatureTree(child))
+                changedFeatures.add(child.getFeature());
+    }
+
+    private static void collectDescendants(FeatureTree featureTree, List<FeatureTree> descendants) {
+        for (FeatureTree child : featureTree.getChildren()) {
+            descendants.add(child);
+            collectDescendants(child, descendants);
+        }
+    }
+
+    /**
+     * Checks all features before removing any of them, so that a failing removal changes nothing.
+     */
+    public void remove(List<Feature> features) {
+        features.forEach(this::checkRemovable);
+        features.forEach(this::remove);
+    }
+}
@@ -22,6 +22,17 @@ public class FeatureModels {
         return IO.load(source, Paths.get(fileName), FeatureModelFormatManager.getInstance()).orElseThrow();
     }
 
+    /**
+     * @return a deep copy of the given feature model, whose features have new identifiers
+     */
+    public static FeatureModel copy(FeatureModel featureModel) {
+        try {
+            return ModelSnapshot.of(featureModel, 0).toFeatureModel();
+        } catch (UnsupportedOperationException e) {
+            return load(serialize(featureModel, "XmlFeatureModelFormat"), "copy.xml");
+        }
+    }
+
     public static String serialize(FeatureModel featureModel, String formatId) {
         Logger.debug("serializing feature model with format {}", formatId);
         if (featureModel == null)
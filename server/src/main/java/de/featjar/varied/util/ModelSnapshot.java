@@ -0,0 +1,275 @@
+package de.featjar.varied.util;
+
+import de.featjar.formula.structure.atomic.literal.BooleanLiteral;
+import de.featjar.formula.structure.atomic.literal.LiteralPredicate;
+import de.featjar.formula.structure.compound.*;
+import de.featjar.model.Constraint;
+import de.featjar.model.FeatureModel;
+import de.featjar.model.FeatureTree;
+import de.featjar.model.Identifier;
+
+import java.util.*;
+
+/**
+ * An immutable snapshot of a feature model, which any number of threads may read (e.g., to export or analyze it)
+ * while the session keeps changing the feature model.
+ * Consecutive snapshots share all features whose subtrees did not change, so taking a new snapshot after an
+ * operation only copies the changed features and their ancestors. Likewise, constraints are only converted again
+ * if they changed.
+ */
+public final class ModelSnapshot {
+    public enum Group {AND, OR, ALTERNATIVE}
+
+    public static final class Feature {
+        private final String id, name, description;
+        private final boolean isAbstract, isHidden, isMandatory;
+        private final Group group;
+        private final List<Feature> children;
+
+        private Feature(FeatureTree featureTree, List<Feature> children) {
+            de.featjar.model.Feature feature = featureTree.getFeature();
+            id = feature.getIdentifier().toString();
+            name = feature.getName();
+            description = feature.getDescription().orElse(null);
+            isAbstract = feature.isAbstract();
+            isHidden = feature.isHidden();
+            isMandatory = featureTree.isMandatory();
+            group = featureTree.isOr() ? Group.OR : featureTree.isAlternative() ? Group.ALTERNATIVE : Group.AND;
+            this.children = Collections.unmodifiableList(children);
+        }
+
+        public String getID() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Optional<String> getDescription() {
+            return Optional.ofNullable(description);
+        }
+
+        public boolean isAbstract() {
+            return isAbstract;
+        }
+
+        public boolean isHidden() {
+            return isHidden;
+        }
+
+        public boolean isMandatory() {
+            return isMandatory;
+        }
+
+        public Group getGroup() {
+            return group;
+        }
+
+        public List<Feature> getChildren() {
+            return children;
+        }
+    }
+
+    public static final class Formula {
+        public enum Type {LITERAL, NEGATED_LITERAL, AND, OR, NOT, IMPLIES, BIIMPLIES}
+
+        private final Type type;
+        private final String variable;
+        private final List<Formula> children;
+
+        private Formula(Type type, String variable, List<Formula> children) {
+            this.type = type;
+            this.variable = variable;
+            this.children = Collections.unmodifiableList(children);
+        }
+
+        /**
+         * @throws UnsupportedOperationException if the formula contains operators that can not be represented
+         */
+        private static Formula of(de.featjar.formula.structure.Formula formula) {
+            if (formula instanceof BooleanLiteral) {
+                BooleanLiteral literal = (BooleanLiteral) formula;
+                return new Formula(literal.isPositive() ? Type.LITERAL : Type.NEGATED_LITERAL,
+                        String.valueOf(literal.getVariable()), List.of());
+            }
+            Type type;
+            // order matters, as some operators are subclasses of others
+            if (formula instanceof And)
+                type = Type.AND;
+            else if (formula instanceof Or)
+                type = Type.OR;
+            else if (formula instanceof Not)
+                type = Type.NOT;
+            else if (formula instanceof Biimplies)
+                type = Type.BIIMPLIES;
+            else if (formula instanceof Implies)
+                type = Type.IMPLIES;
+            else
+                throw new UnsupportedOperationException("can not represent formula " + formula);
+            List<Formula> children = new ArrayList<>();
+            for (de.featjar.formula.structure.Formula child : formula.getChildren())
+                children.add(of(child));
+            return new Formula(type, null, children);
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return the literal's variable, null if this is not a literal
+         */
+        public String getVariable() {
+            return variable;
+        }
+
+        public List<Formula> getChildren() {
+            return children;
+        }
+    }
+
+    private final long revision;
+    private final Feature root;
+    private final List<Formula> constraints;
+
+    // only compared by identity to decide whether the constraints changed, never read
+    private final List<Constraint> sourceConstraints;
+
+    private ModelSnapshot(long revision, Feature root, List<Formula> constraints, List<Constraint> sourceConstraints) {
+        this.revision = revision;
+        this.root = root;
+        this.constraints = constraints;
+        this.sourceConstraints = sourceConstraints;
+    }
+
+    /**
+     * Takes a snapshot of a whole feature model. Must be called on the thread that owns the feature model.
+     *
+     * @throws UnsupportedOperationException if the feature model contains formulas that can not be represented
+     */
+    public static ModelSnapshot of(FeatureModel featureModel, long revision) {
+        return new ModelSnapshot(revision, toFeature(featureModel.getFeatureTree(), null, Set.of()),
+                toFormulas(featureModel), List.copyOf(featureModel.getConstraints()));
+    }
+
+    /**
+     * Takes a snapshot of a feature model that shares everything with this snapshot except for the given changed
+     * features and their ancestors. Must be called on the thread that owns the feature model.
+     *
+     * @param changedFeatures features whose attributes or children changed since this snapshot was taken
+     */
+    public ModelSnapshot update(FeatureModel featureModel, Collection<de.featjar.model.Feature> changedFeatures, long revision) {
+        FeatureTree featureTree = featureModel.getFeatureTree();
+        if (!featureTree.getFeature().getIdentifier().toString().equals(root.getID()))
+            return of(featureModel, revision);
+        Set<String> changedIDs = new HashSet<>();
+        for (de.featjar.model.Feature feature : changedFeatures)
+            // a changed feature may have been removed since, then its former ancestors are copied unnecessarily
+            for (FeatureTree ancestor = feature.getFeatureTree(); ancestor != null; ancestor = ancestor.getParent().orElse(null))
+                changedIDs.add(ancestor.getFeature().getIdentifier().toString());
+        boolean haveConstraintsChanged = !isSameList(sourceConstraints, featureModel.getConstraints());
+        return new ModelSnapshot(revision, toFeature(featureTree, root, changedIDs),
+                haveConstraintsChanged ? toFormulas(featureModel) : constraints,
+                haveConstraintsChanged ? List.copyOf(featureModel.getConstraints()) : sourceConstraints);
+    }
+
+    private static boolean isSameList(List<?> list, List<?> otherList) {
+        if (list.size() != otherList.size())
+            return false;
+        for (int i = 0; i < list.size(); i++)
+            if (list.get(i) != otherList.get(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * @param previous  the feature's previous snapshot, if any
+     * @param changedIDs features that must not be shared with the previous snapshot
+     */
+    private static Feature toFeature(FeatureTree featureTree, Feature previous, Set<String> changedIDs) {
+        if (previous != null && !changedIDs.contains(previous.getID()))
+            return previous;
+        Map<String, Feature> previousChildren = new HashMap<>();
+        if (previous != null)
+            previous.getChildren().forEach(child -> previousChildren.put(child.getID(), child));
+        List<Feature> children = new ArrayList<>(featureTree.getChildren().size());
+        for (FeatureTree child : featureTree.getChildren())
+            children.add(toFeature(child, previousChildren.get(child.getFeature().getIdentifier().toString()), changedIDs));
+        return new Feature(featureTree, children);
+    }
+
+    private static List<Formula> toFormulas(FeatureModel featureModel) {
+        List<Formula> formulas = new ArrayList<>();
+        for (Constraint constraint : featureModel.getConstraints())
+            formulas.add(Formula.of(constraint.getFormula()));
+        return Collections.unmodifiableList(formulas);
+    }
+
+    /**
+     * @return the revision of the feature model this snapshot was taken of
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    public Feature getRoot() {
+        return root;
+    }
+
+    public List<Formula> getConstraints() {
+        return constraints;
+    }
+
+    /**
+     * Creates a new, mutable feature model from this snapshot, which can be called on any thread.
+     * Its features have new identifiers, but the same names.
+     */
+    public FeatureModel toFeatureModel() {
+        // a new feature model consists of a root feature, which is overwritten with this snapshot's root
+        FeatureModel featureModel = new FeatureModel(Identifier.newCounter());
+        toFeature(root, featureModel.getFeatureTree().getFeature());
+        for (Formula formula : constraints)
+            featureModel.mutate().createConstraint(toFormula(formula, featureModel));
+        return featureModel;
+    }
+
+    private static void toFeature(Feature snapshotFeature, de.featjar.model.Feature feature) {
+        feature.mutate().setName(snapshotFeature.getName());
+        feature.mutate().setDescription(snapshotFeature.getDescription().orElse(null));
+        feature.mutate().setAbstract(snapshotFeature.isAbstract());
+        feature.mutate().setHidden(snapshotFeature.isHidden());
+        FeatureTree.Mutator featureTreeMutator = feature.getFeatureTree().mutate();
+        featureTreeMutator.setMandatory(snapshotFeature.isMandatory());
+        if (snapshotFeature.getGroup() == Group.OR)
+            featureTreeMutator.setOr();
+        else if (snapshotFeature.getGroup() == Group.ALTERNATIVE)
+            featureTreeMutator.setAlternative();
+        else
+            featureTreeMutator.setAnd();
+        for (Feature child : snapshotFeature.getChildren())
+            toFeature(child, feature.mutate().createFeatureBelow());
+    }
+
+    private static de.featjar.formula.structure.Formula toFormula(Formula formula, FeatureModel featureModel) {
+        if (formula.getType() == Formula.Type.LITERAL || formula.getType() == Formula.Type.NEGATED_LITERAL)
+            return new LiteralPredicate(featureModel.getVariableMap().getBooleanVariable(formula.getVariable())
+                    .orElseThrow(() -> new RuntimeException("unknown variable " + formula.getVariable())),
+                    formula.getType() == Formula.Type.LITERAL);
+        List<de.featjar.formula.structure.Formula> children = new ArrayList<>();
+        for (Formula child : formula.getChildren())
+            children.add(toFormula(child, featureModel));
+        switch (formula.getType()) {
+            case AND:
+                return new And(children);
+            case OR:
+                return new Or(children);
+            case NOT:
+                return new Not(children.get(0));
+            case IMPLIES:
+                return new Implies(children.get(0), children.get(1));
+            default:
+                return new Biimplies(children.get(0), children.get(1));
+        }
+    }
+}
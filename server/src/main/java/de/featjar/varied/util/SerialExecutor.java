@@ -0,0 +1,47 @@
+package de.featjar.varied.util;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time and in submission order on a (possibly shared) executor, like a mailbox.
+ * Different serial executors on the same backing executor proceed in parallel.
+ */
+public class SerialExecutor implements Executor {
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private Runnable active;
+
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public synchronized void execute(Runnable runnable) {
+        tasks.add(() -> {
+            try {
+                runnable.run();
+            } finally {
+                scheduleNext();
+            }
+        });
+        if (active == null)
+            scheduleNext();
+    }
+
+    public synchronized int getQueueSize() {
+        return tasks.size();
+    }
+
+    /**
+     * @return whether no task is running or waiting
+     */
+    public synchronized boolean isIdle() {
+        return active == null && tasks.isEmpty();
+    }
+
+    private synchronized void scheduleNext() {
+        if ((active = tasks.poll()) != null)
+            executor.execute(active);
+    }
+}
@@ -1,6 +1,7 @@
 package de.featjar.varied.util;
 
 import de.featjar.varied.session.User;
+import de.featjar.varied.api.EncodedMessage;
 import de.featjar.varied.api.Message;
 
 import java.util.Collection;
@@ -11,9 +12,11 @@ import java.util.function.Predicate;
 public class Users {
     public static void broadcast(Collection<User> users, Message.IEncodable message, Predicate<User> predicate) {
         Objects.requireNonNull(message, "no message given");
+        // encode only once, as all users receive the same message
+        EncodedMessage encodedMessage = new EncodedMessage(message);
         users.stream()
                 .filter(predicate)
-                .forEach(user -> user.send(message));
+                .forEach(user -> user.send(encodedMessage));
     }
 
     public static void broadcast(Collection<User> users, Message.IEncodable message) {
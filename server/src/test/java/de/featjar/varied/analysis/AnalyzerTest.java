@@ -0,0 +1,166 @@
+package de.featjar.varied.analysis;
+
+import de.featjar.model.Feature;
+import de.featjar.model.FeatureModel;
+import de.featjar.varied.Main;
+import de.featjar.varied.util.FeatureIndex;
+import de.featjar.varied.util.FeatureModels;
+import de.featjar.varied.util.ModelSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the analyses of the bundled examples with the configurations of their feature trees, which are
+ * enumerated without a solver, and an analyzer that is reused across revisions with a fresh analyzer.
+ */
+class AnalyzerTest {
+    private static final Analyzer.Interruption NEVER = new Analyzer.Interruption() {
+        public boolean isCancelled() {
+            return false;
+        }
+
+        public boolean shouldYield() {
+            return false;
+        }
+    };
+
+    private static FeatureModel load(String example) {
+        return FeatureModels.load(Main.getResourceURL("examples/" + example + ".xml").orElseThrow());
+    }
+
+    /**
+     * @return all selections of features in the given feature's subtree that are valid according to the feature tree
+     * and contain the given feature
+     */
+    private static List<Set<ModelSnapshot.Feature>> getConfigurations(ModelSnapshot.Feature feature) {
+        List<Set<ModelSnapshot.Feature>> configurations = new ArrayList<>();
+        configurations.add(new HashSet<>(Set.of(feature)));
+        List<ModelSnapshot.Feature> children = feature.getChildren();
+        for (ModelSnapshot.Feature child : children) {
+            List<Set<ModelSnapshot.Feature>> childConfigurations = getConfigurations(child);
+            List<Set<ModelSnapshot.Feature>> newConfigurations = new ArrayList<>();
+            for (Set<ModelSnapshot.Feature> configuration : configurations) {
+                if (feature.getGroup() != ModelSnapshot.Group.AND || !child.isMandatory())
+                    newConfigurations.add(configuration);
+                for (Set<ModelSnapshot.Feature> childConfiguration : childConfigurations) {
+                    Set<ModelSnapshot.Feature> newConfiguration = new HashSet<>(configuration);
+                    newConfiguration.addAll(childConfiguration);
+                    newConfigurations.add(newConfiguration);
+                }
+            }
+            configurations = newConfigurations;
+        }
+        if (feature.getGroup() != ModelSnapshot.Group.AND && !children.isEmpty())
+            configurations.removeIf(configuration -> {
+                long selectedChildren = children.stream().filter(configuration::contains).count();
+                return selectedChildren == 0 || feature.getGroup() == ModelSnapshot.Group.ALTERNATIVE && selectedChildren > 1;
+            });
+        return configurations;
+    }
+
+    private static boolean evaluate(ModelSnapshot.Formula formula, Set<String> selectedNames) {
+        List<ModelSnapshot.Formula> children = formula.getChildren();
+        switch (formula.getType()) {
+            case LITERAL:
+                return selectedNames.contains(formula.getVariable());
+            case NEGATED_LITERAL:
+                return !selectedNames.contains(formula.getVariable());
+            case AND:
+                return children.stream().allMatch(child -> evaluate(child, selectedNames));
+            case OR:
+                return children.stream().anyMatch(child -> evaluate(child, selectedNames));
+            case NOT:
+                return !evaluate(children.get(0), selectedNames);
+            case IMPLIES:
+                return !evaluate(children.get(0), selectedNames) || evaluate(children.get(1), selectedNames);
+            case BIIMPLIES:
+                return evaluate(children.get(0), selectedNames) == evaluate(children.get(1), selectedNames);
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private static List<Set<ModelSnapshot.Feature>> getValidConfigurations(ModelSnapshot snapshot) {
+        List<Set<ModelSnapshot.Feature>> configurations = getConfigurations(snapshot.getRoot());
+        configurations.removeIf(configuration -> {
+            Set<String> selectedNames = new HashSet<>();
+            configuration.forEach(feature -> selectedNames.add(feature.getName()));
+            return !snapshot.getConstraints().stream().allMatch(formula -> evaluate(formula, selectedNames));
+        });
+        return configurations;
+    }
+
+    private static void collectFeatures(ModelSnapshot.Feature feature, ModelSnapshot.Feature parent,
+                                        Map<ModelSnapshot.Feature, ModelSnapshot.Feature> parents) {
+        parents.put(feature, parent);
+        feature.getChildren().forEach(child -> collectFeatures(child, feature, parents));
+    }
+
+    private static Map<Analyzer.Type, List<String>> analyze(Analyzer analyzer, ModelSnapshot snapshot) {
+        Map<Analyzer.Type, List<String>> results = new EnumMap<>(Analyzer.Type.class);
+        results.put(Analyzer.Type.VOID_MODEL, analyzer.isVoid(snapshot, NEVER) ? List.of("void") : List.of());
+        for (Analyzer.Type type : List.of(Analyzer.Type.DEAD_FEATURES, Analyzer.Type.CORE_FEATURES,
+                Analyzer.Type.FALSE_OPTIONAL_FEATURES))
+            results.put(type, analyzer.getFeatures(snapshot, type, null, NEVER));
+        return results;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Car", "FameDB", "Empty"})
+    void agreesWithConfigurations(String example) {
+        ModelSnapshot snapshot = ModelSnapshot.of(load(example), 1);
+        List<Set<ModelSnapshot.Feature>> configurations = getValidConfigurations(snapshot);
+        Map<ModelSnapshot.Feature, ModelSnapshot.Feature> parents = new LinkedHashMap<>();
+        collectFeatures(snapshot.getRoot(), null, parents);
+
+        Set<String> deadFeatures = new HashSet<>(), coreFeatures = new HashSet<>(), falseOptionalFeatures = new HashSet<>();
+        parents.forEach((feature, parent) -> {
+            if (configurations.stream().noneMatch(configuration -> configuration.contains(feature)))
+                deadFeatures.add(feature.getID());
+            else if (configurations.stream().allMatch(configuration -> configuration.contains(feature)))
+                coreFeatures.add(feature.getID());
+            boolean isOptional = parent != null && (parent.getGroup() != ModelSnapshot.Group.AND || !feature.isMandatory());
+            if (isOptional && configurations.stream().anyMatch(configuration -> configuration.contains(parent)) &&
+                    configurations.stream().allMatch(configuration -> !configuration.contains(parent) || configuration.contains(feature)))
+                falseOptionalFeatures.add(feature.getID());
+        });
+        Analyzer analyzer = new Analyzer();
+        assertEquals(configurations.isEmpty(), analyzer.isVoid(snapshot, NEVER));
+        assertEquals(deadFeatures, new HashSet<>(analyzer.getFeatures(snapshot, Analyzer.Type.DEAD_FEATURES, null, NEVER)));
+        assertEquals(coreFeatures, new HashSet<>(analyzer.getFeatures(snapshot, Analyzer.Type.CORE_FEATURES, null, NEVER)));
+        assertEquals(falseOptionalFeatures,
+                new HashSet<>(analyzer.getFeatures(snapshot, Analyzer.Type.FALSE_OPTIONAL_FEATURES, null, NEVER)));
+    }
+
+    @Test
+    void reusedAnalyzerAgreesWithFreshAnalyzer() {
+        FeatureModel featureModel = load("Car");
+        FeatureIndex featureIndex = new FeatureIndex(featureModel);
+        Feature root = featureModel.getFeatureTree().getFeature();
+        Feature leaf = featureModel.getFeatures().stream()
+                .filter(feature -> feature.getFeatureTree().getChildren().isEmpty())
+                .findFirst().orElseThrow();
+        Feature createdFeature = featureIndex.createFeatureBelow(root);
+        featureIndex.takeChangedFeatures();
+        Analyzer analyzer = new Analyzer();
+        ModelSnapshot snapshot = ModelSnapshot.of(featureModel, 1);
+        analyze(analyzer, snapshot);
+
+        // creating features only adds clauses, so the solver is kept, while removing features requires a new one
+        List<Runnable> operations = List.of(
+                () -> featureIndex.createFeatureBelow(root),
+                () -> featureIndex.createFeatureBelow(createdFeature),
+                () -> featureIndex.remove(leaf));
+        long revision = 1;
+        for (Runnable operation : operations) {
+            operation.run();
+            snapshot = snapshot.update(featureModel, featureIndex.takeChangedFeatures(), ++revision);
+            assertEquals(analyze(new Analyzer(), snapshot), analyze(analyzer, snapshot));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package de.featjar.varied.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the solver with enumerating all assignments on small random formulas, and a solver that is kept for
+ * many calls (with learned clauses, restarts and deleted clauses) with a fresh solver on larger ones.
+ */
+class SolverTest {
+    private static int[] randomClause(Random random, int numberOfVariables, int size) {
+        int[] clause = new int[size];
+        for (int i = 0; i < size; i++)
+            clause[i] = (1 + random.nextInt(numberOfVariables)) * (random.nextBoolean() ? 1 : -1);
+        return clause;
+    }
+
+    private static boolean isSatisfiedBy(int[] clause, int assignment) {
+        for (int literal : clause)
+            if (((assignment >> (Math.abs(literal) - 1) & 1) == 1) == literal > 0)
+                return true;
+        return false;
+    }
+
+    private static boolean isSatisfiable(int numberOfVariables, List<int[]> clauses, int[] assumptions) {
+        for (int assignment = 0; assignment < 1 << numberOfVariables; assignment++) {
+            boolean isSatisfied = true;
+            for (int assumption : assumptions)
+                isSatisfied &= isSatisfiedBy(new int[]{assumption}, assignment);
+            for (int[] clause : clauses)
+                isSatisfied &= isSatisfiedBy(clause, assignment);
+            if (isSatisfied)
+                return true;
+        }
+        return false;
+    }
+
+    private static void assertModel(boolean[] model, List<int[]> clauses, int[] assumptions) {
+        for (int assumption : assumptions)
+            assertEquals(assumption > 0, model[Math.abs(assumption)], "assumption " + assumption);
+        for (int[] clause : clauses) {
+            boolean isSatisfied = false;
+            for (int literal : clause)
+                isSatisfied |= model[Math.abs(literal)] == literal > 0;
+            assertTrue(isSatisfied, "clause not satisfied by model");
+        }
+    }
+
+    @Test
+    void agreesWithEnumeration() {
+        Random random = new Random(1);
+        for (int formula = 0; formula < 1000; formula++) {
+            int numberOfVariables = 3 + random.nextInt(10);
+            Solver solver = new Solver();
+            List<int[]> clauses = new ArrayList<>();
+            // clauses are added between calls, as the analyzer does when a revision only adds clauses
+            for (int round = 0; round < 5; round++) {
+                for (int i = random.nextInt(numberOfVariables + 1); i > 0; i--) {
+                    int[] clause = randomClause(random, numberOfVariables, 1 + random.nextInt(3));
+                    clauses.add(clause);
+                    solver.addClause(clause);
+                }
+                for (int call = 0; call < 5; call++) {
+                    int[] assumptions = randomClause(random, numberOfVariables, random.nextInt(3));
+                    boolean isSatisfiable = solver.solve(assumptions);
+                    assertEquals(isSatisfiable(numberOfVariables, clauses, assumptions), isSatisfiable);
+                    if (isSatisfiable)
+                        assertModel(solver.getModel(), clauses, assumptions);
+                }
+            }
+        }
+    }
+
+    @Test
+    void keptSolverAgreesWithFreshSolver() {
+        Random random = new Random(2);
+        int numberOfVariables = 150;
+        for (int formula = 0; formula < 10; formula++) {
+            Solver solver = new Solver();
+            List<int[]> clauses = new ArrayList<>();
+            // random 3-SAT near the threshold, which causes many conflicts
+            for (int i = 0; i < 4.1 * numberOfVariables; i++) {
+                int[] clause = randomClause(random, numberOfVariables, 3);
+                clauses.add(clause);
+                solver.addClause(clause);
+            }
+            for (int call = 0; call < 20; call++) {
+                int[] assumptions = randomClause(random, numberOfVariables, 2);
+                Solver freshSolver = new Solver();
+                clauses.forEach(freshSolver::addClause);
+                boolean isSatisfiable = solver.solve(assumptions);
+                assertEquals(freshSolver.solve(assumptions), isSatisfiable);
+                if (isSatisfiable)
+                    assertModel(solver.getModel(), clauses, assumptions);
+            }
+        }
+    }
+
+    @Test
+    void canBeCancelled() {
+        Random random = new Random(3);
+        Solver solver = new Solver();
+        for (int i = 0; i < 4.26 * 300; i++)
+            solver.addClause(randomClause(random, 300, 3));
+        solver.setCancellation(() -> true);
+        assertThrows(Analyzer.StoppedException.class, solver::solve);
+    }
+}
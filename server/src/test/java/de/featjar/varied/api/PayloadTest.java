@@ -0,0 +1,123 @@
+package de.featjar.varied.api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import de.featjar.model.Feature;
+import de.featjar.model.FeatureModel;
+import de.featjar.varied.Main;
+import de.featjar.varied.util.FeatureIndex;
+import de.featjar.varied.util.FeatureModels;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Applies patches the way the client does (see client/src/model/patch.ts) and compares the result with the
+ * feature model's full payload.
+ */
+class PayloadTest {
+    private static FeatureModel load(String example) {
+        return FeatureModels.load(Main.getResourceURL("examples/" + example + ".xml").orElseThrow());
+    }
+
+    private static JsonObject toJson(FeatureModel featureModel) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        Payload.writeFeatureModel(new JsonWriter(stringWriter), featureModel);
+        return JsonParser.parseString(stringWriter.toString()).getAsJsonObject();
+    }
+
+    private static void flattenFeatureTree(JsonObject featureTree, Map<String, JsonObject> features) {
+        JsonObject feature = featureTree.deepCopy();
+        JsonArray childrenIds = new JsonArray();
+        for (JsonElement child : feature.remove("children").getAsJsonArray()) {
+            childrenIds.add(child.getAsJsonObject().get("id"));
+            flattenFeatureTree(child.getAsJsonObject(), features);
+        }
+        feature.add("childrenIds", childrenIds);
+        features.put(feature.get("id").getAsString(), feature);
+    }
+
+    private static JsonObject buildFeatureTree(String id, Map<String, JsonObject> features) {
+        JsonObject feature = features.get(id);
+        assertNotNull(feature, "feature " + id + " missing in patched feature model");
+        JsonObject featureTree = feature.deepCopy();
+        JsonArray children = new JsonArray();
+        for (JsonElement childId : featureTree.remove("childrenIds").getAsJsonArray())
+            children.add(buildFeatureTree(childId.getAsString(), features));
+        featureTree.add("children", children);
+        return featureTree;
+    }
+
+    private static JsonObject applyPatch(JsonObject featureTree, JsonObject patch) {
+        Map<String, JsonObject> features = new HashMap<>();
+        flattenFeatureTree(featureTree, features);
+        patch.getAsJsonArray("removedFeatureIDs").forEach(id -> features.remove(id.getAsString()));
+        patch.getAsJsonArray("addedFeatures").forEach(feature ->
+                features.put(feature.getAsJsonObject().get("id").getAsString(), feature.getAsJsonObject()));
+        patch.getAsJsonArray("changedFeatures").forEach(feature ->
+                features.put(feature.getAsJsonObject().get("id").getAsString(), feature.getAsJsonObject()));
+        JsonObject root = features.values().stream()
+                .filter(feature -> feature.get("isRoot").getAsBoolean())
+                .findFirst().orElseThrow();
+        return buildFeatureTree(root.get("id").getAsString(), features);
+    }
+
+    private static Set<String> getIDs(JsonArray ids) {
+        Set<String> strings = new HashSet<>();
+        ids.forEach(id -> strings.add(id.getAsString()));
+        return strings;
+    }
+
+    private static Feature getInnerFeature(FeatureModel featureModel) {
+        // an inner feature whose parent is an inner feature as well, so both can be removed
+        return featureModel.getFeatures().stream()
+                .filter(feature -> !feature.getFeatureTree().getChildren().isEmpty())
+                .filter(feature -> feature.getFeatureTree().getParent().filter(parent -> parent.hasParent()).isPresent())
+                .findFirst().orElseThrow();
+    }
+
+    @Test
+    void removingInnerFeatureMovesChildrenUp() throws IOException {
+        FeatureModel featureModel = load("Car");
+        FeatureIndex featureIndex = new FeatureIndex(featureModel);
+        Payload.Index index = Payload.toIndex(featureModel);
+        JsonObject featureTree = toJson(featureModel).getAsJsonObject("featureTree");
+        Feature innerFeature = getInnerFeature(featureModel);
+
+        featureIndex.remove(innerFeature);
+        JsonObject patch = Payload.updateIndex(index, featureModel, featureIndex.takeChangedFeatures());
+
+        assertEquals(Set.of(innerFeature.getIdentifier().toString()), getIDs(patch.getAsJsonArray("removedFeatureIDs")));
+        assertEquals(toJson(featureModel).getAsJsonObject("featureTree"), applyPatch(featureTree, patch));
+        assertEquals(Payload.toIndex(featureModel).getEncodedLength(), index.getEncodedLength());
+    }
+
+    @Test
+    void removingNestedInnerFeaturesInOnePatch() throws IOException {
+        FeatureModel featureModel = load("Car");
+        FeatureIndex featureIndex = new FeatureIndex(featureModel);
+        Payload.Index index = Payload.toIndex(featureModel);
+        JsonObject featureTree = toJson(featureModel).getAsJsonObject("featureTree");
+        Feature innerFeature = getInnerFeature(featureModel);
+        Feature parent = innerFeature.getFeatureTree().getParent().orElseThrow().getFeature();
+
+        // the children of the inner feature are moved up twice before the patch is computed
+        featureIndex.remove(innerFeature);
+        featureIndex.remove(parent);
+        JsonObject patch = Payload.updateIndex(index, featureModel, featureIndex.takeChangedFeatures());
+
+        assertEquals(Set.of(innerFeature.getIdentifier().toString(), parent.getIdentifier().toString()),
+                getIDs(patch.getAsJsonArray("removedFeatureIDs")));
+        assertEquals(toJson(featureModel).getAsJsonObject("featureTree"), applyPatch(featureTree, patch));
+    }
+}